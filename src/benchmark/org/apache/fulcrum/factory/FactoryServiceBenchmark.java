@@ -0,0 +1,432 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.logger.NullLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the hot paths of {@link DefaultFactoryService}.
+ *
+ * <p>The benchmarks run once single-threaded and once contended by
+ * the nested subclasses. Run with the <code>jmh</code> profile, which
+ * adds the GC profiler to report allocation per call:</p>
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args=FactoryServiceBenchmark
+ * </pre>
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class FactoryServiceBenchmark
+{
+    /** the bean class name */
+    private static final String BEAN = Bean.class.getName();
+
+    /** the isolated bean class name */
+    private static final String ISOLATED_BEAN = IsolatedBean.class.getName();
+
+    /** the class name produced by a custom factory */
+    private static final String CUSTOM = "org.apache.fulcrum.factory.CustomBean";
+
+    /** a class name that cannot be found */
+    private static final String MISSING = "org.apache.fulcrum.factory.MissingBean";
+
+    /** the signature of the parameterized constructor */
+    private static final String[] SIGNATURE = new String[] { "java.lang.String", "int" };
+
+    /** the precompiled signature of the parameterized constructor */
+    private static final Signature TYPED_SIGNATURE = Signature.of(String.class, int.class);
+
+    /** the signature of the isolated bean constructor */
+    private static final String[] ISOLATED_SIGNATURE = new String[] { IsolatedPayload.class.getName() };
+
+    /** the service */
+    private DefaultFactoryService service;
+
+    /** the loader of the isolated classes */
+    private URLClassLoader isolatedLoader;
+
+    /** the payload passed across class loaders */
+    private IsolatedPayload payload;
+
+    /** the parameters of the parameterized constructor */
+    private Object[] params;
+
+    /**
+     * Configures and initializes the service.
+     *
+     * @throws Exception on errors
+     */
+    @Setup
+    public void setUp() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("factory");
+        DefaultConfiguration factories = new DefaultConfiguration("object-factory");
+        DefaultConfiguration factory = new DefaultConfiguration(CUSTOM);
+        factory.setValue(BeanFactory.class.getName());
+        factories.addChild(factory);
+        conf.addChild(factories);
+
+        service = new DefaultFactoryService();
+        service.enableLogging(new NullLogger());
+        service.configure(conf);
+        service.initialize();
+
+        URL location = getClass().getProtectionDomain().getCodeSource().getLocation();
+        isolatedLoader = new IsolatingClassLoader(location, getClass().getClassLoader());
+        payload = new IsolatedPayload("payload");
+        params = new Object[] { "value", Integer.valueOf(42) };
+    }
+
+    /**
+     * Disposes the service.
+     *
+     * @throws Exception on errors
+     */
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        service.dispose();
+        isolatedLoader.close();
+    }
+
+    /**
+     * Reference: plain constructor call.
+     *
+     * @return the instance
+     */
+    @Benchmark
+    public Object baseline()
+    {
+        return new Bean();
+    }
+
+    /**
+     * No-arg instantiation by class name.
+     *
+     * @return the instance
+     * @throws FactoryException on errors
+     */
+    @Benchmark
+    public Object noArg() throws FactoryException
+    {
+        return service.getInstance(BEAN);
+    }
+
+    /**
+     * No-arg instantiation of a batch of 16 instances by class name,
+     * reported per instance.
+     *
+     * @return the instances
+     * @throws FactoryException on errors
+     */
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public Object batch() throws FactoryException
+    {
+        return service.getInstances(BEAN, 16);
+    }
+
+    /**
+     * Instantiation by class name with constructor parameters.
+     *
+     * @return the instance
+     * @throws FactoryException on errors
+     */
+    @Benchmark
+    public Object parameterized() throws FactoryException
+    {
+        return service.getInstance(BEAN, params, SIGNATURE);
+    }
+
+    /**
+     * Instantiation by class name with a precompiled signature.
+     *
+     * @return the instance
+     * @throws FactoryException on errors
+     */
+    @Benchmark
+    public Object precompiled() throws FactoryException
+    {
+        return service.getInstanceBySignature(BEAN, params, TYPED_SIGNATURE);
+    }
+
+    /**
+     * Resolution of a constructor signature.
+     *
+     * @return the signature
+     * @throws ClassNotFoundException on errors
+     */
+    @Benchmark
+    public Object signature() throws ClassNotFoundException
+    {
+        return service.getSignature(Bean.class, params, SIGNATURE);
+    }
+
+    /**
+     * Instantiation through a custom factory.
+     *
+     * @return the instance
+     * @throws FactoryException on errors
+     */
+    @Benchmark
+    public Object customFactory() throws FactoryException
+    {
+        return service.getInstance(CUSTOM);
+    }
+
+    /**
+     * Instantiation in a different class loader, switching the parameter
+     * into the context of that loader.
+     *
+     * @return the instance
+     * @throws FactoryException on errors
+     */
+    @Benchmark
+    public Object crossLoader() throws FactoryException
+    {
+        return service.getInstance(ISOLATED_BEAN, isolatedLoader, new Object[] { payload }, ISOLATED_SIGNATURE);
+    }
+
+    /**
+     * Lookup of a class that does not exist.
+     *
+     * @return the exception
+     */
+    @Benchmark
+    public Object missingClass()
+    {
+        try
+        {
+            return service.getInstance(MISSING);
+        }
+        catch (FactoryException x)
+        {
+            return x;
+        }
+    }
+
+    /**
+     * The benchmarks run by a single thread.
+     */
+    @Threads(1)
+    public static class SingleThreaded extends FactoryServiceBenchmark
+    {
+        // all benchmarks inherited
+    }
+
+    /**
+     * The benchmarks run by four threads sharing the service.
+     */
+    @Threads(4)
+    public static class Contended extends FactoryServiceBenchmark
+    {
+        // all benchmarks inherited
+    }
+
+    /**
+     * A bean with a no-arg and a parameterized constructor.
+     */
+    public static class Bean
+    {
+        /** the name */
+        private final String name;
+
+        /** the count */
+        private final int count;
+
+        /**
+         * Default constructor
+         */
+        public Bean()
+        {
+            this("bean", 0);
+        }
+
+        /**
+         * @param name the name
+         * @param count the count
+         */
+        public Bean(String name, int count)
+        {
+            this.name = name;
+            this.count = count;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + count;
+        }
+    }
+
+    /**
+     * A custom factory for beans.
+     */
+    public static class BeanFactory implements Factory<Bean>
+    {
+        @Override
+        public void init(String className)
+        {
+            // nothing to initialize
+        }
+
+        @Override
+        public Bean getInstance()
+        {
+            return new Bean();
+        }
+
+        @Override
+        public Bean getInstance(ClassLoader loader)
+        {
+            return getInstance();
+        }
+
+        @Override
+        public Bean getInstance(Object[] params, String[] signature)
+        {
+            return getInstance();
+        }
+
+        @Override
+        public Bean getInstance(ClassLoader loader, Object[] params, String[] signature)
+        {
+            return getInstance();
+        }
+
+        @Override
+        public boolean isLoaderSupported()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * A bean loaded separately by the isolating class loader.
+     */
+    public static class IsolatedBean
+    {
+        /** the payload */
+        private final IsolatedPayload payload;
+
+        /**
+         * @param payload the payload
+         */
+        public IsolatedBean(IsolatedPayload payload)
+        {
+            this.payload = payload;
+        }
+
+        @Override
+        public String toString()
+        {
+            return payload.toString();
+        }
+    }
+
+    /**
+     * A serializable parameter loaded separately by the isolating class loader.
+     */
+    public static class IsolatedPayload implements Serializable
+    {
+        /** Serial number */
+        private static final long serialVersionUID = 1L;
+
+        /** the value */
+        private final String value;
+
+        /**
+         * @param value the value
+         */
+        public IsolatedPayload(String value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public String toString()
+        {
+            return value;
+        }
+    }
+
+    /**
+     * A class loader defining the isolated classes itself instead of
+     * delegating to its parent.
+     */
+    static final class IsolatingClassLoader extends URLClassLoader
+    {
+        /** the prefix of the isolated class names */
+        private static final String PREFIX = FactoryServiceBenchmark.class.getName() + "$Isolated";
+
+        /**
+         * @param location the location of the classes
+         * @param parent the parent loader
+         */
+        IsolatingClassLoader(URL location, ClassLoader parent)
+        {
+            super(new URL[] { location }, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+        {
+            if (!name.startsWith(PREFIX))
+            {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name))
+            {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null)
+                {
+                    clazz = findClass(name);
+                }
+                return clazz;
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Deserialization of a nested object graph with and without the
+ * shared class resolution cache of {@link ObjectInputStreamForContext}.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ObjectInputStreamForContextBenchmark
+{
+    /** the serialized graph */
+    private byte[] graph;
+
+    /** the target class loader */
+    private ClassLoader loader;
+
+    /**
+     * Serializes a tree of nodes with leaves of a few different types.
+     *
+     * @throws IOException on errors
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        loader = getClass().getClassLoader();
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bout))
+        {
+            out.writeObject(Node.tree(4, 4));
+        }
+        graph = bout.toByteArray();
+    }
+
+    /**
+     * Resolves every class descriptor through the class loader.
+     *
+     * @return the graph
+     * @throws Exception on errors
+     */
+    @Benchmark
+    public Object uncached() throws Exception
+    {
+        try (ObjectInputStreamForContext in =
+            new ObjectInputStreamForContext(new ByteArrayInputStream(graph), loader, null))
+        {
+            return in.readObject();
+        }
+    }
+
+    /**
+     * Resolves class descriptors through the shared cache.
+     *
+     * @return the graph
+     * @throws Exception on errors
+     */
+    @Benchmark
+    public Object cached() throws Exception
+    {
+        try (ObjectInputStreamForContext in =
+            new ObjectInputStreamForContext(new ByteArrayInputStream(graph), loader))
+        {
+            return in.readObject();
+        }
+    }
+
+    /**
+     * An inner node of the graph.
+     */
+    public static class Node implements Serializable
+    {
+        /** Serial number */
+        private static final long serialVersionUID = 1L;
+
+        /** the children */
+        private final List<Serializable> children = new ArrayList<Serializable>();
+
+        /** a leaf */
+        private final Leaf leaf;
+
+        /**
+         * @param depth the depth of the tree
+         * @param width the number of children per node
+         * @return the root node
+         */
+        static Node tree(int depth, int width)
+        {
+            Node node = new Node(new Leaf("depth " + depth, depth));
+            for (int i = 0; i < width; i++)
+            {
+                node.children.add(depth > 1 ? tree(depth - 1, width) : new Value(i));
+            }
+            return node;
+        }
+
+        /**
+         * @param leaf a leaf
+         */
+        Node(Leaf leaf)
+        {
+            this.leaf = leaf;
+        }
+
+        /**
+         * @return the leaf
+         */
+        Leaf getLeaf()
+        {
+            return leaf;
+        }
+    }
+
+    /**
+     * A leaf with a name.
+     */
+    public static class Leaf implements Serializable
+    {
+        /** Serial number */
+        private static final long serialVersionUID = 1L;
+
+        /** the name */
+        private final String name;
+
+        /** the values */
+        private final Value[] values;
+
+        /**
+         * @param name the name
+         * @param count the number of values
+         */
+        Leaf(String name, int count)
+        {
+            this.name = name;
+            this.values = new Value[count];
+            for (int i = 0; i < count; i++)
+            {
+                values[i] = new Value(i);
+            }
+        }
+
+        /**
+         * @return the name
+         */
+        String getName()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * A value.
+     */
+    public static class Value implements Serializable
+    {
+        /** Serial number */
+        private static final long serialVersionUID = 1L;
+
+        /** the value */
+        private final long value;
+
+        /**
+         * @param value the value
+         */
+        Value(long value)
+        {
+            this.value = value;
+        }
+
+        /**
+         * @return the value
+         */
+        long getValue()
+        {
+            return value;
+        }
+    }
+}
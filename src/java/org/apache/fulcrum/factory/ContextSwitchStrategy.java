@@ -0,0 +1,45 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * ContextSwitchStrategy is an interface for switching objects into
+ * the context of a different class loader. The Factory Service uses
+ * it for constructor parameters whose classes come from a class loader
+ * other than the one of the constructed class.
+ *
+ * <p>Implementations must be thread-safe and have a public no-arg
+ * constructor, so that they can be configured by class name.</p>
+ *
+ * @version $Id$
+ */
+public interface ContextSwitchStrategy
+{
+    /**
+     * Switches an object into the context of a class loader.
+     *
+     * @param object the object to switch.
+     * @param loader the class loader of the new context.
+     * @return the switched object, or the object itself if it can be shared.
+     * @throws FactoryException if the object cannot be switched.
+     */
+    Object switchContext(Object object, ClassLoader loader)
+        throws FactoryException;
+}
@@ -19,13 +19,37 @@ package org.apache.fulcrum.factory;
  * under the License.
  */
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import org.apache.avalon.framework.activity.Disposable;
 import org.apache.avalon.framework.activity.Initializable;
@@ -33,7 +57,20 @@ import org.apache.avalon.framework.configuration.Configurable;
 import org.apache.avalon.framework.configuration.Configuration;
 import org.apache.avalon.framework.configuration.ConfigurationException;
 import org.apache.avalon.framework.logger.AbstractLogEnabled;
-import org.apache.fulcrum.factory.utils.ObjectInputStreamForContext;
+import org.apache.fulcrum.factory.FactoryStatistics.Phase;
+import org.apache.fulcrum.factory.utils.ClassCache;
+import org.apache.fulcrum.factory.utils.ClassList;
+import org.apache.fulcrum.factory.utils.ConstructorInvoker;
+import org.apache.fulcrum.factory.utils.ConstructorResolver;
+import org.apache.fulcrum.factory.utils.FactoryEvents;
+import org.apache.fulcrum.factory.utils.FactoryMetrics;
+import org.apache.fulcrum.factory.utils.Instantiator;
+import org.apache.fulcrum.factory.utils.MissingClassCache;
+import org.apache.fulcrum.factory.utils.ObjectPool;
+import org.apache.fulcrum.factory.utils.PrefetchBuffer;
+import org.apache.fulcrum.factory.utils.PrefixIndex;
+import org.apache.fulcrum.factory.utils.SerializationContextSwitchStrategy;
+import org.apache.fulcrum.factory.utils.TypeName;
 
 /**
  * The Factory Service instantiates objects using specified class loaders. If
@@ -56,16 +93,211 @@ public class DefaultFactoryService extends AbstractLogEnabled
 	 */
 	private static final String CLASS_LOADER = "classloader";
 
+	/**
+	 * The attribute routing package prefixes to an additional class loader.
+	 */
+	private static final String PACKAGES = "packages";
+
 	/**
 	 * The property prefix specifying additional object factories.
 	 */
 	private static final String OBJECT_FACTORY = "object-factory";
 
+	/**
+	 * The property specifying static factory methods of classes.
+	 */
+	private static final String FACTORY_METHOD = "factory-method";
+
+	/**
+	 * The property specifying classes instantiated by copying a prototype.
+	 */
+	private static final String PROTOTYPE = "prototype";
+
+	/**
+	 * The property specifying the scopes of shared instances.
+	 */
+	private static final String SCOPE = "scope";
+
+	/**
+	 * The property specifying the executor of asynchronous instantiation.
+	 */
+	private static final String ASYNC = "async";
+
+	/**
+	 * The attribute specifying the kind of executor.
+	 */
+	private static final String EXECUTOR = "executor";
+
+	/**
+	 * The attribute specifying the number of threads of an executor.
+	 */
+	private static final String THREADS = "threads";
+
+	/**
+	 * The executor running on the common fork join pool.
+	 */
+	private static final String COMMON_EXECUTOR = "common";
+
+	/**
+	 * The executor running on a fixed number of threads.
+	 */
+	private static final String FIXED_EXECUTOR = "fixed";
+
+	/**
+	 * The executor running each task on a new virtual thread.
+	 */
+	private static final String VIRTUAL_EXECUTOR = "virtual";
+
+	/**
+	 * The property specifying classes instantiated ahead of time.
+	 */
+	private static final String PREFETCH = "prefetch";
+
+	/**
+	 * The attribute specifying the number of buffered instances.
+	 */
+	private static final String DEPTH = "depth";
+
+	/**
+	 * The attribute specifying the number of buffered instances at which to refill.
+	 */
+	private static final String LOW_WATER = "low-water";
+
+	/**
+	 * The property prefix specifying pooled classes.
+	 */
+	private static final String OBJECT_POOL = "object-pool";
+
+	/**
+	 * The property specifying the strategy for switching objects between class loaders.
+	 */
+	private static final String CONTEXT_SWITCH_STRATEGY = "context-switch-strategy";
+
+	/**
+	 * The property specifying the resolved class cache.
+	 */
+	private static final String CLASS_CACHE = "class-cache";
+
+	/**
+	 * The property specifying the cache of missing classes.
+	 */
+	private static final String MISSING_CLASS_CACHE = "missing-class-cache";
+
+	/**
+	 * The property enabling the adaptive order of additional class loaders.
+	 */
+	private static final String ADAPTIVE_ORDER = "adaptive-order";
+
+	/**
+	 * The default maximum number of packages tracked by the adaptive order.
+	 */
+	private static final int DEFAULT_ADAPTIVE_SIZE = 1024;
+
+	/**
+	 * The property specifying the collection of metrics.
+	 */
+	private static final String METRICS = "metrics";
+
+	/**
+	 * The attribute specifying the maximum number of class names with metrics.
+	 */
+	private static final String METRICS_CLASSES = "classes";
+
+	/**
+	 * The property specifying the registration of the MXBean.
+	 */
+	private static final String JMX = "jmx";
+
+	/**
+	 * The attribute specifying the name of the MXBean.
+	 */
+	private static final String JMX_NAME = "name";
+
+	/**
+	 * The object name prefix of the MXBean.
+	 */
+	private static final String JMX_DOMAIN = "org.apache.fulcrum.factory:type=FactoryService,name=";
+
+	/**
+	 * The property specifying classes and factories warmed up at initialization.
+	 */
+	private static final String WARM_UP = "warm-up";
+
+	/**
+	 * The property specifying a class to warm up.
+	 */
+	private static final String WARM_UP_CLASS = "class";
+
+	/**
+	 * The attribute specifying the constructor signature of a class to warm up.
+	 */
+	private static final String SIGNATURE = "signature";
+
+	/**
+	 * The attribute specifying whether to warm up the configured factories.
+	 */
+	private static final String FACTORIES = "factories";
+
+	/**
+	 * The attribute specifying the number of warm up threads.
+	 */
+	private static final String PARALLELISM = "parallelism";
+
+	/**
+	 * The attribute specifying the time budget of the warm up in milliseconds.
+	 */
+	private static final String BUDGET = "budget";
+
+	/**
+	 * The default time budget of the warm up in milliseconds.
+	 */
+	private static final long DEFAULT_BUDGET = 10000L;
+
+	/**
+	 * The property specifying the file recording requested classes for the next start.
+	 */
+	private static final String STARTUP_LIST = "startup-list";
+
+	/**
+	 * The attribute specifying a file name.
+	 */
+	private static final String FILE = "file";
+
+	/**
+	 * The default time budget of replaying the startup list in milliseconds.
+	 */
+	private static final long DEFAULT_REPLAY_BUDGET = 60000L;
+
+	/**
+	 * The attribute enabling a feature.
+	 */
+	private static final String ENABLED = "enabled";
+
+	/**
+	 * The attribute specifying the size of a cache.
+	 */
+	private static final String CACHE_SIZE = "size";
+
+	/**
+	 * The attribute specifying the time to live of cache entries in milliseconds.
+	 */
+	private static final String CACHE_TTL = "ttl";
+
 	/**
 	 * The name of the default factory.
 	 */
 	protected static final String DEFAULT_FACTORY = "default";
 
+	/**
+	 * The copy mode selecting the copy method by the prototype.
+	 */
+	private static final String AUTO_COPY = "";
+
+	/**
+	 * An empty signature.
+	 */
+	private static final String[] NO_SIGNATURE = new String[0];
+
 	/**
 	 * Primitive classes for reflection of constructors.
 	 */
@@ -87,17 +319,220 @@ public class DefaultFactoryService extends AbstractLogEnabled
 	 */
 	private String[] loaderNames;
 	/**
-	 * Additional class loaders.
+	 * temporary storage of the package prefixes of the class loaders between configure and initialize
+	 */
+	private String[][] loaderPackages;
+	/**
+	 * temporary storage of the context switch strategy class name between configure and initialize
+	 */
+	private String contextSwitchStrategyName;
+	/**
+	 * temporary storage of class names and signatures to warm up between configure and initialize, null if disabled
+	 */
+	private List<Map.Entry<String, String[]>> warmUpEntries;
+	/**
+	 * The number of warm up threads.
+	 */
+	private int warmUpParallelism;
+	/**
+	 * The time budget of the warm up in milliseconds.
+	 */
+	private long warmUpBudget;
+	/**
+	 * The outcome of the warm up at initialization, null if none was done.
 	 */
-	private ArrayList<ClassLoader> classLoaders = new ArrayList<ClassLoader>();
+	private volatile WarmUpReport warmUpReport;
 	/**
-	 * Customized object factories.
+	 * The kind of executor of asynchronous instantiation.
 	 */
-	private ConcurrentHashMap<String, Factory<?>> objectFactories = new ConcurrentHashMap<String, Factory<?>>();
+	private String asyncExecutorName;
+	/**
+	 * The number of threads of a fixed executor.
+	 */
+	private int asyncThreads;
+	/**
+	 * The executor of asynchronous instantiation.
+	 */
+	private Executor asyncExecutor = ForkJoinPool.commonPool();
+	/**
+	 * The executor of asynchronous instantiation owned by the service, null if shared.
+	 */
+	private ExecutorService ownedExecutor;
+	/**
+	 * The number of threads refilling prefetch buffers.
+	 */
+	private int prefetchParallelism;
+	/**
+	 * The executor refilling prefetch buffers, null if no class is prefetched.
+	 */
+	private ExecutorService prefetchExecutor;
+	/**
+	 * The file of the startup list, null if disabled.
+	 */
+	private Path startupListFile;
+	/**
+	 * The classes requested since initialization, null if disabled.
+	 */
+	private ClassList startupList;
+	/**
+	 * The number of threads replaying the startup list.
+	 */
+	private int replayParallelism;
+	/**
+	 * The time budget of replaying the startup list in milliseconds.
+	 */
+	private long replayBudget;
+	/**
+	 * The thread replaying the startup list, null if not started.
+	 */
+	private Thread replayThread;
+	/**
+	 * Whether requested classes are recorded in the startup list, from the end
+	 * of initialization until disposal.
+	 */
+	private volatile boolean startupRecording;
+	/**
+	 * Set while the current thread loads classes on behalf of the service,
+	 * which are not recorded in the startup list.
+	 */
+	private final ThreadLocal<Boolean> unrecorded = new ThreadLocal<Boolean>();
+	/**
+	 * The outcome of replaying the startup list, null until finished.
+	 */
+	private volatile WarmUpReport replayReport;
+	/**
+	 * Additional class loaders, an immutable snapshot replaced on changes.
+	 */
+	private volatile List<ClassLoader> classLoaders = Collections.emptyList();
+	/**
+	 * The lock of changes to the additional class loaders.
+	 */
+	private final Object classLoaderLock = new Object();
+	/**
+	 * The additional class loaders by routed package prefix, guarded by the lock.
+	 */
+	private final Map<String, ClassLoader> packageRoutes = new HashMap<String, ClassLoader>();
+	/**
+	 * The index of the routed package prefixes, an immutable snapshot replaced
+	 * on changes, null if no packages are routed.
+	 */
+	private volatile PrefixIndex<ClassLoader> packageIndex;
+	/**
+	 * The additional class loader which last resolved a class per package name,
+	 * null if the adaptive order is disabled.
+	 */
+	private ConcurrentHashMap<String, ClassLoader> packageLoaders;
+	/**
+	 * The maximum number of packages tracked by the adaptive order.
+	 */
+	private int packageLoadersSize;
+	/**
+	 * The number of additional class loaders which failed to load a class.
+	 */
+	private final LongAdder failedLoaderAttempts = new LongAdder();
+	/**
+	 * Customized object factories per class name, including classes without one.
+	 */
+	private ConcurrentHashMap<String, FactoryHolder> objectFactories = new ConcurrentHashMap<String, FactoryHolder>();
+	/**
+	 * The number of class names remembered to have no factory.
+	 */
+	private final AtomicInteger noFactories = new AtomicInteger();
+	/**
+	 * The maximum number of class names remembered to have no factory.
+	 */
+	private int noFactoriesSize = ClassCache.DEFAULT_SIZE;
 	/**
 	 * Customized object factory classes.
 	 */
 	private ConcurrentHashMap<String, String> objectFactoryClasses = new ConcurrentHashMap<String, String>();
+	/**
+	 * Names of static factory methods per class name.
+	 */
+	private ConcurrentHashMap<String, String> factoryMethods = new ConcurrentHashMap<String, String>();
+	/**
+	 * Copy modes of prototypes per class name, {@link #AUTO_COPY} if selected by the prototype.
+	 */
+	private ConcurrentHashMap<String, String> prototypeCopies = new ConcurrentHashMap<String, String>();
+	/**
+	 * The strategy for switching parameters between class loaders.
+	 */
+	private ContextSwitchStrategy contextSwitchStrategy = new SerializationContextSwitchStrategy();
+	/**
+	 * Scopes of classes with shared instances, prototype scoped classes are not included.
+	 */
+	private ConcurrentHashMap<String, InstanceScope> scopes = new ConcurrentHashMap<String, InstanceScope>();
+	/**
+	 * Singleton instances per class name, including those not created yet.
+	 */
+	private ConcurrentHashMap<String, InstanceHolder> singletons = new ConcurrentHashMap<String, InstanceHolder>();
+	/**
+	 * Thread scoped instances by thread, so that dispose can release those of
+	 * all threads. Threads are weakly referenced.
+	 */
+	private final Map<Thread, Map<String, Object>> threadInstanceMaps =
+			Collections.synchronizedMap(new WeakHashMap<Thread, Map<String, Object>>());
+	/**
+	 * Thread scoped instances of the current thread by class name.
+	 */
+	private final ThreadLocal<Map<String, Object>> threadInstances = ThreadLocal.withInitial(() -> {
+		Map<String, Object> instances = new ConcurrentHashMap<String, Object>();
+		threadInstanceMaps.put(Thread.currentThread(), instances);
+		return instances;
+	});
+	/**
+	 * The request scope of the current thread.
+	 */
+	private final ThreadLocal<RequestScope> requestScopes = new ThreadLocal<RequestScope>();
+	/**
+	 * Buffers of instances created ahead of time per class name.
+	 */
+	private ConcurrentHashMap<String, PrefetchBuffer<?>> prefetchBuffers =
+			new ConcurrentHashMap<String, PrefetchBuffer<?>>();
+	/**
+	 * Object pools of pooled classes.
+	 */
+	private ConcurrentHashMap<String, ObjectPool<?>> objectPools = new ConcurrentHashMap<String, ObjectPool<?>>();
+	/**
+	 * Resolved classes keyed by initiating class loader and class name, null if disabled.
+	 */
+	private ClassCache classCache = new ClassCache();
+	/**
+	 * Class names recently not found in any class loader, null if disabled.
+	 */
+	private MissingClassCache missingClassCache = new MissingClassCache();
+	/**
+	 * Collected metrics, null if disabled.
+	 */
+	private FactoryMetrics metrics;
+	/**
+	 * The name of the registered MXBean, null if disabled.
+	 */
+	private ObjectName objectName;
+	/**
+	 * Resolved constructors per class, keyed by the signature as a list of type names,
+	 * as a {@link Signature} or by the argument types if no signature was given.
+	 */
+	private final ClassValue<ConcurrentHashMap<Object, ConstructorInvoker<?>>> constructors =
+			new ClassValue<ConcurrentHashMap<Object, ConstructorInvoker<?>>>() {
+				@Override
+				protected ConcurrentHashMap<Object, ConstructorInvoker<?>> computeValue(Class<?> type) 
+				{
+					return new ConcurrentHashMap<Object, ConstructorInvoker<?>>(4);
+				}
+			};
+
+	/**
+	 * Resolved signature classes per class, keyed by the signature as a list of type names.
+	 */
+	private final ClassValue<ConcurrentHashMap<List<String>, Class<?>[]>> signatures =
+			new ClassValue<ConcurrentHashMap<List<String>, Class<?>[]>>() {
+				@Override
+				protected ConcurrentHashMap<List<String>, Class<?>[]> computeValue(Class<?> type) 
+				{
+					return new ConcurrentHashMap<List<String>, Class<?>[]>(4);
+				}
+			};
 
 	/**
 	 * Gets the class of a primitive type.
@@ -111,7 +546,8 @@ public class DefaultFactoryService extends AbstractLogEnabled
 	}
 
 	/**
-	 * Gets an instance of a named class.
+	 * Gets an instance of a named class. Classes configured with a scope
+	 * other than prototype get the instance shared within the scope.
 	 *
 	 * @param className the name of the class.
 	 * @return the instance.
@@ -123,66 +559,43 @@ public class DefaultFactoryService extends AbstractLogEnabled
 		if (className == null) {
 			throw new FactoryException("Missing String className");
 		}
-		Factory<T> factory = getFactory(className);
-		if (factory == null) {
-			Class<T> clazz;
-			try {
-				clazz = loadClass(className);
-			} catch (ClassNotFoundException x) {
-				throw new FactoryException("Instantiation failed for class " + className, x);
-			}
-			return getInstance(clazz);
-		} else {
-			return factory.getInstance();
+		InstanceScope scope = scopes.isEmpty() ? null : scopes.get(className);
+		if (scope != null) {
+			return getScopedInstance(className, scope);
 		}
+		return newInstance(className);
 	}
 
 	/**
-	 * Gets an instance of a named class using a specified class loader.
-	 *
-	 * <p>
-	 * Class loaders are supported only if the isLoaderSupported method returns
-	 * true. Otherwise the loader parameter is ignored.
+	 * Gets a new instance of a named class, regardless of its scope. Instances
+	 * of prefetched classes are taken from their buffer if available.
 	 *
 	 * @param className the name of the class.
-	 * @param loader    the class loader.
 	 * @return the instance.
 	 * @throws FactoryException if instantiation fails.
 	 */
-	@Override
-	public <T> T getInstance(String className, ClassLoader loader) throws FactoryException 
+	@SuppressWarnings("unchecked")
+	private <T> T newInstance(String className) throws FactoryException 
 	{
-		Factory<T> factory = getFactory(className);
-		if (factory == null) {
-			if (loader != null) {
-				Class<T> clazz;
-				try {
-					clazz = loadClass(className, loader);
-				} catch (ClassNotFoundException x) {
-					throw new FactoryException("Instantiation failed for class " + className, x);
-				}
-				return getInstance(clazz);
-			} else {
-				return getInstance(className);
+		PrefetchBuffer<T> buffer = prefetchBuffers.isEmpty() ? null : (PrefetchBuffer<T>) prefetchBuffers.get(className);
+		if (buffer != null) {
+			T instance = buffer.poll();
+			scheduleRefill(className, buffer);
+			if (instance != null) {
+				return instance;
 			}
-		} else {
-			return factory.getInstance(loader);
 		}
+		return createInstance(className);
 	}
 
 	/**
-	 * Gets an instance of a named class. Parameters for its constructor are given
-	 * as an array of objects, primitive types must be wrapped with a corresponding
-	 * class.
+	 * Creates a new instance of a named class.
 	 *
 	 * @param className the name of the class.
-	 * @param params    an array containing the parameters of the constructor.
-	 * @param signature an array containing the signature of the constructor.
 	 * @return the instance.
 	 * @throws FactoryException if instantiation fails.
 	 */
-	@Override
-	public <T> T getInstance(String className, Object[] params, String[] signature) throws FactoryException 
+	private <T> T createInstance(String className) throws FactoryException 
 	{
 		Factory<T> factory = getFactory(className);
 		if (factory == null) {
@@ -192,16 +605,227 @@ public class DefaultFactoryService extends AbstractLogEnabled
 			} catch (ClassNotFoundException x) {
 				throw new FactoryException("Instantiation failed for class " + className, x);
 			}
-			return getInstance(clazz, params, signature);
+			return getInstance(clazz);
 		} else {
-			return factory.getInstance(params, signature);
+			FactoryEvents.FactoryInvocation event = FactoryEvents.FactoryInvocation.start();
+			long start = startTimer();
+			T instance = factory.getInstance();
+			record(className, Phase.CONSTRUCT, start);
+			if (event != null) {
+				event.finish(className, factory, null);
+			}
+			return instance;
 		}
 	}
 
 	/**
-	 * Gets an instance of a named class using a specified class loader. Parameters
-	 * for its constructor are given as an array of objects, primitive types must be
-	 * wrapped with a corresponding class.
+	 * Gets the shared instance of a named class in its scope, creating it
+	 * on first use. Singletons are created only once, under the lock of their
+	 * class name.
+	 *
+	 * @param className the name of the class.
+	 * @param scope     the scope of the class.
+	 * @return the instance.
+	 * @throws FactoryException if instantiation fails or no request scope is open.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T getScopedInstance(String className, InstanceScope scope) throws FactoryException 
+	{
+		switch (scope) 
+		{
+			case SINGLETON: 
+			{
+				InstanceHolder holder = singletons.get(className);
+				if (holder == null) 
+				{
+					holder = new InstanceHolder();
+					InstanceHolder _holder = singletons.putIfAbsent(className, holder);
+					if (_holder != null) 
+					{
+						holder = _holder;
+					}
+				}
+				Object instance = holder.instance;
+				if (instance == null) 
+				{
+					synchronized (holder) 
+					{
+						instance = holder.instance;
+						if (instance == null) 
+						{
+							instance = newInstance(className);
+							holder.instance = instance;
+						}
+					}
+				}
+				return (T) instance;
+			}
+			case THREAD: 
+			{
+				Map<String, Object> instances = threadInstances.get();
+				Object instance = instances.get(className);
+				if (instance == null) 
+				{
+					instance = newInstance(className);
+					instances.put(className, instance);
+				}
+				return (T) instance;
+			}
+			case REQUEST: 
+			{
+				RequestScope requestScope = requestScopes.get();
+				if (requestScope == null || !requestScope.isOpen()) 
+				{
+					throw new FactoryException("No request scope open for " + className);
+				}
+				Object instance = requestScope.get(className);
+				if (instance == null) 
+				{
+					instance = newInstance(className);
+					requestScope.put(className, instance);
+				}
+				return (T) instance;
+			}
+			default:
+				return newInstance(className);
+		}
+	}
+
+	/**
+	 * Refills the buffer of a prefetched class in the background, if it is
+	 * at or below its low-water mark and not being refilled already.
+	 *
+	 * @param className the name of the class.
+	 * @param buffer    the buffer of the class.
+	 */
+	private <T> void scheduleRefill(final String className, final PrefetchBuffer<T> buffer) 
+	{
+		ExecutorService executor = prefetchExecutor;
+		if (executor == null || !buffer.startRefill()) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					buffer.refill(() -> createInstance(className));
+				} catch (Exception x) {
+					// log the cause once, retries are backed off until a refill succeeds
+					if (getLogger() != null && buffer.getConsecutiveFailures() == 1) {
+						getLogger().debug("Prefetching " + className + " failed", x);
+					}
+				}
+			});
+		} catch (RejectedExecutionException x) {
+			// the service is being disposed, do not prefetch any more
+			buffer.cancelRefill();
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Gets the buffer of instances of a class created ahead of time.
+	 *
+	 * @param className the name of the class.
+	 * @return the buffer, or null if the class is not prefetched.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> PrefetchBuffer<T> getPrefetchBuffer(String className) 
+	{
+		return className != null ? (PrefetchBuffer<T>) prefetchBuffers.get(className) : null;
+	}
+
+	/**
+	 * Opens a request scope for the calling thread.
+	 *
+	 * @return the scope, to be closed when the request is done.
+	 */
+	@Override
+	public RequestScope openRequestScope() 
+	{
+		return new RequestScope(requestScopes);
+	}
+
+	/**
+	 * Gets an instance of a named class using a specified class loader.
+	 *
+	 * <p>
+	 * Class loaders are supported only if the isLoaderSupported method returns
+	 * true. Otherwise the loader parameter is ignored. Configured scopes apply
+	 * only without a class loader, as the class loaded by another loader is a
+	 * different class.
+	 *
+	 * @param className the name of the class.
+	 * @param loader    the class loader.
+	 * @return the instance.
+	 * @throws FactoryException if instantiation fails.
+	 */
+	@Override
+	public <T> T getInstance(String className, ClassLoader loader) throws FactoryException 
+	{
+		Factory<T> factory = getFactory(className);
+		if (factory == null) {
+			if (loader != null) {
+				Class<T> clazz;
+				try {
+					clazz = loadClass(className, loader);
+				} catch (ClassNotFoundException x) {
+					throw new FactoryException("Instantiation failed for class " + className, x);
+				}
+				return getInstance(clazz);
+			} else {
+				return getInstance(className);
+			}
+		} else {
+			FactoryEvents.FactoryInvocation event = FactoryEvents.FactoryInvocation.start();
+			long start = startTimer();
+			T instance = factory.getInstance(loader);
+			record(className, Phase.CONSTRUCT, start);
+			if (event != null) {
+				event.finish(className, factory, loader);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Gets an instance of a named class. Parameters for its constructor are given
+	 * as an array of objects, primitive types must be wrapped with a corresponding
+	 * class.
+	 *
+	 * @param className the name of the class.
+	 * @param params    an array containing the parameters of the constructor.
+	 * @param signature an array containing the signature of the constructor.
+	 * @return the instance.
+	 * @throws FactoryException if instantiation fails.
+	 */
+	@Override
+	public <T> T getInstance(String className, Object[] params, String[] signature) throws FactoryException 
+	{
+		Factory<T> factory = getFactory(className);
+		if (factory == null) {
+			Class<T> clazz;
+			try {
+				clazz = loadClass(className);
+			} catch (ClassNotFoundException x) {
+				throw new FactoryException("Instantiation failed for class " + className, x);
+			}
+			return getInstance(clazz, params, signature);
+		} else {
+			FactoryEvents.FactoryInvocation event = FactoryEvents.FactoryInvocation.start();
+			long start = startTimer();
+			T instance = factory.getInstance(params, signature);
+			record(className, Phase.CONSTRUCT, start);
+			if (event != null) {
+				event.finish(className, factory, null);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Gets an instance of a named class using a specified class loader. Parameters
+	 * for its constructor are given as an array of objects, primitive types must be
+	 * wrapped with a corresponding class.
 	 *
 	 * <p>
 	 * Class loaders are supported only if the isLoaderSupported method returns
@@ -234,8 +858,171 @@ public class DefaultFactoryService extends AbstractLogEnabled
 				return getInstance(className, params, signature);
 			}
 		} else {
-			return factory.getInstance(loader, params, signature);
+			FactoryEvents.FactoryInvocation event = FactoryEvents.FactoryInvocation.start();
+			long start = startTimer();
+			T instance = factory.getInstance(loader, params, signature);
+			record(className, Phase.CONSTRUCT, start);
+			if (event != null) {
+				event.finish(className, factory, loader);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Gets an instance of a named class using a precompiled signature.
+	 * Parameters for its constructor are given as an array of objects,
+	 * primitive types must be wrapped with a corresponding class.
+	 *
+	 * @param className the name of the class.
+	 * @param params    an array containing the parameters of the constructor.
+	 * @param signature the signature of the constructor.
+	 * @return the instance.
+	 * @throws FactoryException if instantiation fails.
+	 */
+	@Override
+	public <T> T getInstanceBySignature(String className, Object[] params, Signature signature) throws FactoryException 
+	{
+		Factory<T> factory = getFactory(className);
+		if (factory == null) {
+			Class<T> clazz;
+			try {
+				clazz = loadClass(className);
+			} catch (ClassNotFoundException x) {
+				throw new FactoryException("Instantiation failed for class " + className, x);
+			}
+			return getInstanceBySignature(clazz, params, signature);
+		} else {
+			FactoryEvents.FactoryInvocation event = FactoryEvents.FactoryInvocation.start();
+			long start = startTimer();
+			T instance = factory.getInstanceBySignature(params, signature);
+			record(className, Phase.CONSTRUCT, start);
+			if (event != null) {
+				event.finish(className, factory, null);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Gets an instance of a named class using a specified class loader and a
+	 * precompiled signature. Parameters for its constructor are given as an
+	 * array of objects, primitive types must be wrapped with a corresponding
+	 * class.
+	 *
+	 * @param className the name of the class.
+	 * @param loader    the class loader.
+	 * @param params    an array containing the parameters of the constructor.
+	 * @param signature the signature of the constructor.
+	 * @return the instance.
+	 * @throws FactoryException if instantiation fails.
+	 */
+	@Override
+	public <T> T getInstanceBySignature(String className, ClassLoader loader, Object[] params, Signature signature)
+			throws FactoryException 
+	{
+		Factory<T> factory = getFactory(className);
+		if (factory == null) {
+			if (loader != null) {
+				Class<T> clazz;
+				try {
+					clazz = loadClass(className, loader);
+				} catch (ClassNotFoundException x) {
+					throw new FactoryException("Instantiation failed for class " + className, x);
+				}
+				return getInstanceBySignature(clazz, params, signature);
+			} else {
+				return getInstanceBySignature(className, params, signature);
+			}
+		} else {
+			FactoryEvents.FactoryInvocation event = FactoryEvents.FactoryInvocation.start();
+			long start = startTimer();
+			T instance = factory.getInstanceBySignature(loader, params, signature);
+			record(className, Phase.CONSTRUCT, start);
+			if (event != null) {
+				event.finish(className, factory, loader);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Gets an instance of a named class asynchronously.
+	 *
+	 * @param className the name of the class.
+	 * @return the future instance.
+	 */
+	@Override
+	public <T> CompletableFuture<T> getInstanceAsync(final String className) 
+	{
+		return supplyAsync(className, () -> getInstance(className));
+	}
+
+	/**
+	 * Gets an instance of a named class asynchronously. Parameters for its
+	 * constructor are given as an array of objects, primitive types must be
+	 * wrapped with a corresponding class.
+	 *
+	 * @param className the name of the class.
+	 * @param params    an array containing the parameters of the constructor.
+	 * @param signature an array containing the signature of the constructor.
+	 * @return the future instance.
+	 */
+	@Override
+	public <T> CompletableFuture<T> getInstanceAsync(final String className, final Object[] params,
+			final String[] signature) 
+	{
+		return supplyAsync(className, () -> getInstance(className, params, signature));
+	}
+
+	/**
+	 * Runs an instantiation on the executor of asynchronous instantiation.
+	 *
+	 * @param className the name of the class.
+	 * @param task      the instantiation.
+	 * @return the future instance.
+	 */
+	private <T> CompletableFuture<T> supplyAsync(String className, final Callable<T> task) 
+	{
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		try {
+			asyncExecutor.execute(() -> {
+				try {
+					future.complete(task.call());
+				} catch (Throwable x) {
+					future.completeExceptionally(x);
+				}
+			});
+		} catch (RejectedExecutionException x) {
+			future.completeExceptionally(new FactoryException("Instantiation rejected for class " + className, x));
+		}
+		return future;
+	}
+
+	/**
+	 * Gets new instances of a named class, looking up the factory, class and
+	 * constructor once.
+	 *
+	 * @param className the name of the class.
+	 * @param count     the number of instances.
+	 * @return the instances.
+	 * @throws FactoryException if instantiation fails.
+	 */
+	@Override
+	public <T> List<T> getInstances(String className, int count) throws FactoryException 
+	{
+		if (className == null) {
+			throw new FactoryException("Missing String className");
+		}
+		if (count < 0) {
+			throw new FactoryException("Invalid count " + count + " of instances of " + className);
+		}
+		InstanceSupplier<T> supplier = newSupplier(className);
+		List<T> instances = new ArrayList<T>(count);
+		for (int i = 0; i < count; i++) {
+			instances.add(supplier.getInstance());
 		}
+		return instances;
 	}
 
 	/**
@@ -252,6 +1039,34 @@ public class DefaultFactoryService extends AbstractLogEnabled
 		return factory != null ? factory.isLoaderSupported() : true;
 	}
 
+	/**
+	 * Tests if a named class has a factory or can be loaded by the default or
+	 * the additional class loaders. Class names known to be missing are answered
+	 * from the cache of missing classes without creating an exception.
+	 *
+	 * @param className the name of the class.
+	 * @return true if the class can be instantiated.
+	 */
+	@Override
+	public boolean isAvailable(String className) 
+	{
+		if (className == null) {
+			return false;
+		}
+		try {
+			if (getFactory(className) != null) {
+				return true;
+			}
+			if (missingClassCache != null && missingClassCache.isMissing(className)) {
+				return false;
+			}
+			loadClass(className);
+			return true;
+		} catch (FactoryException | ClassNotFoundException | LinkageError x) {
+			return false;
+		}
+	}
+
 	/**
 	 * Gets an instance of a specified class.
 	 *
@@ -264,8 +1079,15 @@ public class DefaultFactoryService extends AbstractLogEnabled
 	public <T> T getInstance(Class<T> clazz) throws FactoryException 
 	{
 		try {
-			return clazz.newInstance();
-		} catch (Exception x) {
+			FactoryEvents.Construct event = FactoryEvents.Construct.start();
+			long start = startTimer();
+			T instance = Instantiator.newInstance(clazz);
+			record(clazz.getName(), Phase.CONSTRUCT, start);
+			if (event != null) {
+				event.finish(clazz, null);
+			}
+			return instance;
+		} catch (Exception | LinkageError x) {
 			throw new FactoryException("Instantiation failed for " + clazz.getName(), x);
 		}
 	}
@@ -287,284 +1109,1963 @@ public class DefaultFactoryService extends AbstractLogEnabled
 	{
 		/* Try to construct. */
 		try {
-			Class<?>[] sign = getSignature(clazz, params, signature);
-			return clazz.getConstructor(sign).newInstance(params);
+			FactoryEvents.Construct event = FactoryEvents.Construct.start();
+			long start = startTimer();
+			ConstructorInvoker<T> invoker = getConstructorInvoker(clazz, params, signature);
+			T instance = invoker.newInstance(params);
+			record(clazz.getName(), Phase.CONSTRUCT, start);
+			if (event != null) {
+				event.finish(clazz, params);
+			}
+			return instance;
 		} catch (Exception x) {
 			throw new FactoryException("Instantiation failed for " + clazz.getName(), x);
 		}
 	}
 
 	/**
-	 * Gets the signature classes for parameters of a method of a class.
+	 * Gets an instance of a specified class using a precompiled signature.
+	 * Parameters for its constructor are given as an array of objects,
+	 * primitive types must be wrapped with a corresponding class.
 	 *
-	 * @param clazz     the class.
-	 * @param params    an array containing the parameters of the method.
-	 * @param signature an array containing the signature of the method.
-	 * @return an array of signature classes. Note that in some cases objects in the
-	 *         parameter array can be switched to the context of a different class
-	 *         loader.
-	 * @throws ClassNotFoundException if any of the classes is not found.
+	 * @param           <T> Type of the class
+	 * @param clazz     the class
+	 * @param params    an array containing the parameters of the constructor
+	 * @param signature the signature of the constructor
+	 * @return the instance
+	 * @throws FactoryException if instantiation fails.
 	 */
-	@Override
-	public Class<?>[] getSignature(Class<?> clazz, Object params[], String signature[]) 
-			throws ClassNotFoundException 
+	protected <T> T getInstanceBySignature(Class<T> clazz, Object params[], Signature signature) 
+			throws FactoryException 
+	{
+		try {
+			FactoryEvents.Construct event = FactoryEvents.Construct.start();
+			long start = startTimer();
+			ConstructorInvoker<T> invoker = getConstructorInvoker(clazz, params, signature);
+			T instance = invoker.newInstance(params);
+			record(clazz.getName(), Phase.CONSTRUCT, start);
+			if (event != null) {
+				event.finish(clazz, params);
+			}
+			return instance;
+		} catch (Exception x) {
+			throw new FactoryException("Instantiation failed for " + clazz.getName(), x);
+		}
+	}
+
+	/**
+	 * Borrows an instance of a named class from its pool.
+	 *
+	 * @param className the name of the class.
+	 * @return the instance.
+	 * @throws FactoryException if instantiation fails.
+	 */
+	@Override
+	public <T> T borrowInstance(String className) throws FactoryException 
+	{
+		ObjectPool<T> pool = getObjectPool(className);
+		if (pool != null) {
+			T instance = pool.poll();
+			if (instance != null) {
+				return instance;
+			}
+		}
+		return getInstance(className);
+	}
+
+	/**
+	 * Returns a borrowed instance of a named class to its pool. Instances
+	 * which are not of the named class are discarded, so they are never
+	 * handed to other borrowers.
+	 *
+	 * @param className the name of the class the instance was borrowed for.
+	 * @param instance  the instance.
+	 * @return true if the instance was pooled, false if it was discarded.
+	 */
+	@Override
+	public boolean returnInstance(String className, Object instance) 
+	{
+		ObjectPool<Object> pool = getObjectPool(className);
+		if (pool == null || instance == null) {
+			return false;
+		}
+		try {
+			if (!loadClass(className).isInstance(instance)) {
+				return false;
+			}
+		} catch (ClassNotFoundException x) {
+			/* The type of instances of factories for virtual names cannot be checked. */
+			return false;
+		}
+		return pool.offer(instance);
+	}
+
+	/**
+	 * Gets the pool of a named class.
+	 *
+	 * @param className the name of the class.
+	 * @return the pool, or null if the class is not pooled.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> ObjectPool<T> getObjectPool(String className) 
+	{
+		return className != null ? (ObjectPool<T>) objectPools.get(className) : null;
+	}
+
+	/**
+	 * Gets a reusable handle for instantiating a named class.
+	 *
+	 * @param className the name of the class.
+	 * @return the handle.
+	 * @throws FactoryException if the class or its factory cannot be resolved.
+	 */
+	@Override
+	public <T> InstanceSupplier<T> supplierFor(final String className) throws FactoryException 
+	{
+		if (className == null) {
+			throw new FactoryException("Missing String className");
+		}
+		final InstanceSupplier<T> supplier = newSupplier(className);
+		final InstanceScope scope = scopes.get(className);
+		if (scope == null) {
+			return supplier;
+		}
+		return new InstanceSupplier<T>() {
+			@Override
+			public T getInstance() throws FactoryException 
+			{
+				return getScopedInstance(className, scope);
+			}
+
+			@Override
+			public T getInstance(Object[] params) throws FactoryException 
+			{
+				return supplier.getInstance(params);
+			}
+		};
+	}
+
+	/**
+	 * Gets a reusable handle for creating new instances of a named class,
+	 * regardless of its scope.
+	 *
+	 * @param className the name of the class.
+	 * @return the handle.
+	 * @throws FactoryException if the class or its factory cannot be resolved.
+	 */
+	private <T> InstanceSupplier<T> newSupplier(final String className) throws FactoryException 
+	{
+		final Factory<T> factory = getFactory(className);
+		if (factory == null) {
+			Class<T> clazz;
+			try {
+				clazz = loadClass(className);
+			} catch (ClassNotFoundException x) {
+				throw new FactoryException("Instantiation failed for class " + className, x);
+			}
+			return supplierFor(clazz);
+		} else {
+			return new InstanceSupplier<T>() {
+				@Override
+				public T getInstance() throws FactoryException 
+				{
+					FactoryEvents.FactoryInvocation event = FactoryEvents.FactoryInvocation.start();
+					long start = startTimer();
+					T instance = factory.getInstance();
+					record(className, Phase.CONSTRUCT, start);
+					if (event != null) {
+						event.finish(className, factory, null);
+					}
+					return instance;
+				}
+
+				@Override
+				public T getInstance(Object[] params) throws FactoryException 
+				{
+					if (params != null && params.length > 0) {
+						throw new FactoryException("Instantiation failed for " + className
+							+ ": no parameters expected");
+					}
+					return getInstance();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Gets a reusable handle for instantiating a class through the constructor
+	 * with the given signature.
+	 *
+	 * @param clazz     the class.
+	 * @param signature the signature of the constructor, empty for the no-arg
+	 *                  constructor.
+	 * @return the handle.
+	 * @throws FactoryException if the constructor cannot be resolved.
+	 */
+	@Override
+	public <T> InstanceSupplier<T> supplierFor(final Class<T> clazz, String... signature) throws FactoryException 
+	{
+		if (signature == null || signature.length == 0) {
+			final Callable<T> instantiator = Instantiator.forClass(clazz);
+			return new InstanceSupplier<T>() {
+				@Override
+				public T getInstance() throws FactoryException 
+				{
+					try {
+						FactoryEvents.Construct event = FactoryEvents.Construct.start();
+						long start = startTimer();
+						T instance = instantiator.call();
+						record(clazz.getName(), Phase.CONSTRUCT, start);
+						if (event != null) {
+							event.finish(clazz, null);
+						}
+						return instance;
+					} catch (Exception | LinkageError x) {
+						throw new FactoryException("Instantiation failed for " + clazz.getName(), x);
+					}
+				}
+
+				@Override
+				public T getInstance(Object[] params) throws FactoryException 
+				{
+					if (params != null && params.length > 0) {
+						throw new FactoryException("Instantiation failed for " + clazz.getName()
+							+ ": no parameters expected");
+					}
+					return getInstance();
+				}
+			};
+		}
+
+		final ConstructorInvoker<T> invoker;
+		try {
+			invoker = getConstructorInvoker(clazz, null, signature);
+		} catch (Exception x) {
+			throw new FactoryException("Instantiation failed for " + clazz.getName(), x);
+		}
+		return new InstanceSupplier<T>() {
+			@Override
+			public T getInstance() throws FactoryException 
+			{
+				return getInstance(null);
+			}
+
+			@Override
+			public T getInstance(Object[] params) throws FactoryException 
+			{
+				try {
+					FactoryEvents.Construct event = FactoryEvents.Construct.start();
+					long start = startTimer();
+					switchParameters(clazz, invoker.getParameterTypes(), params);
+					T instance = invoker.newInstance(params);
+					record(clazz.getName(), Phase.CONSTRUCT, start);
+					if (event != null) {
+						event.finish(clazz, params);
+					}
+					return instance;
+				} catch (Exception x) {
+					throw new FactoryException("Instantiation failed for " + clazz.getName(), x);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Gets the cached constructor of a class matching a signature. Parameters
+	 * are switched to the context of the class loader of the class as done by
+	 * {@link #getSignature(Class, Object[], String[])}. If no signature but
+	 * parameters are given, the constructor is selected by the types of the
+	 * parameters.
+	 *
+	 * @param           <T> Type of the class
+	 * @param clazz     the class
+	 * @param params    an array containing the parameters of the constructor
+	 * @param signature an array containing the signature of the constructor
+	 * @return the constructor invoker
+	 * @throws ClassNotFoundException if any of the signature classes is not found.
+	 * @throws NoSuchMethodException if there is no matching constructor.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> ConstructorInvoker<T> getConstructorInvoker(Class<T> clazz, Object params[], String signature[])
+			throws ClassNotFoundException, NoSuchMethodException 
+	{
+		if (signature == null && params != null && params.length > 0) {
+			return getConstructorInvoker(clazz, params);
+		}
+		ConcurrentHashMap<Object, ConstructorInvoker<?>> cache = constructors.get(clazz);
+		List<String> key = signature != null ? Arrays.asList(signature) : Collections.<String>emptyList();
+		ConstructorInvoker<T> invoker = (ConstructorInvoker<T>) cache.get(key);
+		if (invoker == null) {
+			Class<?>[] sign = getSignature(clazz, params, signature);
+			invoker = ConstructorInvoker.of(clazz.getConstructor(sign));
+			if (signature != null) {
+				key = Arrays.asList(signature.clone());
+			}
+			cache.putIfAbsent(key, invoker);
+		} else if (signature != null) {
+			switchParameters(clazz, invoker.getParameterTypes(), params);
+		}
+		recordStartup(clazz.getName(), signature);
+		return invoker;
+	}
+
+	/**
+	 * Gets the cached constructor of a class selected by the runtime types of
+	 * the parameters. Constructors applicable by subtyping are preferred over
+	 * those requiring unboxing, and the most specific one is chosen. Parameters
+	 * are switched to the context of the class loader of the class if needed.
+	 *
+	 * @param        <T> Type of the class
+	 * @param clazz  the class
+	 * @param params an array containing the parameters of the constructor
+	 * @return the constructor invoker
+	 * @throws NoSuchMethodException if no constructor or more than one equally
+	 *                               specific constructor is applicable.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> ConstructorInvoker<T> getConstructorInvoker(Class<T> clazz, Object params[])
+			throws NoSuchMethodException 
+	{
+		Class<?>[] types = new Class<?>[params.length];
+		for (int i = 0; i < params.length; i++) {
+			types[i] = params[i] != null ? params[i].getClass() : null;
+		}
+		ArgumentTypes key = new ArgumentTypes(types);
+		ConcurrentHashMap<Object, ConstructorInvoker<?>> cache = constructors.get(clazz);
+		ConstructorInvoker<T> invoker = (ConstructorInvoker<T>) cache.get(key);
+		if (invoker == null) {
+			invoker = ConstructorInvoker.of(ConstructorResolver.resolve(clazz, types));
+			if (isVisible(types, clazz.getClassLoader())) {
+				/* Do not pin argument types of other loaders by the cache of the class. */
+				cache.putIfAbsent(key, invoker);
+			}
+		}
+		switchParameters(clazz, invoker.getParameterTypes(), params);
+		return invoker;
+	}
+
+	/**
+	 * Tests if types come from a class loader or its ancestors.
+	 *
+	 * @param types  the types, may contain null.
+	 * @param loader the class loader.
+	 * @return true if all types are visible.
+	 */
+	static boolean isVisible(Class<?>[] types, ClassLoader loader) 
+	{
+		types: for (Class<?> type : types) {
+			ClassLoader typeLoader = type != null ? type.getClassLoader() : null;
+			if (typeLoader == null) {
+				continue;
+			}
+			for (ClassLoader l = loader; l != null; l = l.getParent()) {
+				if (l == typeLoader) {
+					continue types;
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the cached constructor of a class matching a precompiled signature.
+	 * Parameters are switched to the context of the class loader of the class
+	 * if needed.
+	 *
+	 * @param           <T> Type of the class
+	 * @param clazz     the class
+	 * @param params    an array containing the parameters of the constructor
+	 * @param signature the signature of the constructor
+	 * @return the constructor invoker
+	 * @throws NoSuchMethodException if there is no matching constructor.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> ConstructorInvoker<T> getConstructorInvoker(Class<T> clazz, Object params[], Signature signature)
+			throws NoSuchMethodException 
+	{
+		if (signature == null) {
+			signature = Signature.EMPTY;
+		}
+		ConcurrentHashMap<Object, ConstructorInvoker<?>> cache = constructors.get(clazz);
+		ConstructorInvoker<T> invoker = (ConstructorInvoker<T>) cache.get(signature);
+		if (invoker == null) {
+			invoker = ConstructorInvoker.of(clazz.getConstructor(signature.types()));
+			if (isVisible(signature.types(), clazz.getClassLoader())) {
+				/* Do not pin signature types of other loaders by the cache of the class. */
+				cache.putIfAbsent(signature, invoker);
+			}
+		}
+		if (startupRecording) {
+			recordStartup(clazz.getName(), signature.getTypeNames());
+		}
+		switchParameters(clazz, signature.types(), params);
+		return invoker;
+	}
+
+	/**
+	 * Gets the signature classes for parameters of a method of a class.
+	 *
+	 * <p>
+	 * Type names may be primitive or class names, arrays in source form like
+	 * <code>int[]</code> or <code>java.lang.String...</code>, binary array names
+	 * and descriptors like <code>[I</code>, and nested classes in binary or source
+	 * form. The resolved classes are cached per class and signature, unless
+	 * they come from class loaders the class cannot see itself.
+	 * </p>
+	 *
+	 * @param clazz     the class.
+	 * @param params    an array containing the parameters of the method.
+	 * @param signature an array containing the signature of the method.
+	 * @return an array of signature classes. Note that in some cases objects in the
+	 *         parameter array can be switched to the context of a different class
+	 *         loader.
+	 * @throws ClassNotFoundException if any of the classes is not found.
+	 */
+	@Override
+	public Class<?>[] getSignature(Class<?> clazz, Object params[], String signature[]) 
+			throws ClassNotFoundException 
+	{
+		if (signature != null) {
+			/* We have parameters. */
+			ConcurrentHashMap<List<String>, Class<?>[]> cache = signatures.get(clazz);
+			Class<?>[] sign = cache.get(Arrays.asList(signature));
+			if (sign == null) {
+				sign = resolveSignature(clazz.getClassLoader(), signature);
+				if (isVisible(sign, clazz.getClassLoader())) {
+					/* Do not pin types resolved by the dynamic class loaders. */
+					cache.putIfAbsent(Arrays.asList(signature.clone()), sign);
+				}
+			}
+			sign = sign.clone();
+			switchParameters(clazz, sign, params);
+			return sign;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Resolves the type names of a signature.
+	 *
+	 * @param loader    the class loader of the target class, null to use the
+	 *                  default class loaders.
+	 * @param signature an array containing the signature.
+	 * @return an array of signature classes.
+	 * @throws ClassNotFoundException if any of the classes is not found.
+	 */
+	private Class<?>[] resolveSignature(final ClassLoader loader, String signature[]) throws ClassNotFoundException 
+	{
+		TypeName.ClassResolver resolver = name -> loader != null ? loader.loadClass(name) : loadClass(name);
+		Class<?>[] sign = new Class[signature.length];
+		for (int i = 0; i < signature.length; i++) {
+			TypeName type;
+			try {
+				type = TypeName.parse(signature[i]);
+			} catch (IllegalArgumentException x) {
+				throw new ClassNotFoundException(signature[i], x);
+			}
+			sign[i] = type.resolve(resolver);
+		}
+		return sign;
+	}
+
+	/**
+	 * Switches parameters of a method of a class to the context of the class
+	 * loader of the class, if their signature classes come from a different
+	 * class loader than the parameters themselves.
+	 *
+	 * @param clazz  the class.
+	 * @param sign   the signature classes of the method.
+	 * @param params an array containing the parameters of the method.
+	 */
+	protected void switchParameters(Class<?> clazz, Class<?>[] sign, Object params[]) 
+	{
+		ClassLoader loader = clazz.getClassLoader();
+		if (loader == null || params == null) {
+			return;
+		}
+		for (int i = 0; i < sign.length; i++) {
+			ClassLoader tempLoader = sign[i].getClassLoader();
+			if (params[i] != null && tempLoader != null
+					&& !tempLoader.equals(params[i].getClass().getClassLoader())) {
+				/*
+				 * The class uses a different class loader, switch the parameter.
+				 */
+				long start = startTimer();
+				params[i] = switchObjectContext(params[i], loader);
+				record(clazz.getName(), Phase.SWITCH_CONTEXT, start);
+			}
+		}
+	}
+
+	/**
+	 * Switches an object into the context of a different class loader using the
+	 * configured {@link ContextSwitchStrategy}. If switching fails, the object
+	 * itself is returned.
+	 *
+	 * @param object an object to switch.
+	 * @param loader the loader of the new context.
+	 * @return the object
+	 */
+	protected Object switchObjectContext(Object object, ClassLoader loader) 
+	{
+		FactoryEvents.ContextSwitch event = FactoryEvents.ContextSwitch.start();
+		try 
+		{
+			Object switched = contextSwitchStrategy.switchContext(object, loader);
+			if (event != null) 
+			{
+				event.finish(object, loader, true);
+			}
+			return switched;
+		} 
+		catch (FactoryException x) 
+		{
+			if (event != null) 
+			{
+				event.finish(object, loader, false);
+			}
+			if (getLogger() != null) 
+			{
+				getLogger().debug("Using " + object.getClass().getName() + " without context switch", x);
+			}
+			return object;
+		}
+	}
+
+	/**
+	 * Gets the strategy for switching objects between class loaders.
+	 *
+	 * @return the strategy.
+	 */
+	public ContextSwitchStrategy getContextSwitchStrategy() 
+	{
+		return contextSwitchStrategy;
+	}
+
+	/**
+	 * Loads the named class using the default class loader.
+	 *
+	 * @param className the name of the class to load.
+	 * @return {@inheritDoc} the loaded class.
+	 * @throws ClassNotFoundException if the class was not found.
+	 */
+	protected <T> Class<T> loadClass(String className) throws ClassNotFoundException 
+	{
+		if (metrics == null) 
+		{
+			return resolveClass(className);
+		}
+		long start = System.nanoTime();
+		try 
+		{
+			return resolveClass(className);
+		} 
+		finally 
+		{
+			record(className, Phase.RESOLVE, start);
+		}
+	}
+
+	/**
+	 * Resolves the named class using the default class loader and the additional
+	 * class loaders.
+	 *
+	 * @param className the name of the class to load.
+	 * @return the loaded class.
+	 * @throws ClassNotFoundException if the class was not found.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Class<T> resolveClass(String className) throws ClassNotFoundException 
+	{
+		ClassLoader loader = this.getClass().getClassLoader();
+		if (classCache != null) 
+		{
+			Class<T> clazz = (Class<T>) classCache.get(loader, className);
+			if (clazz != null) 
+			{
+				recordStartup(className, null);
+				return clazz;
+			}
+		}
+		FactoryEvents.ClassMiss miss = FactoryEvents.ClassMiss.start();
+		if (missingClassCache != null && missingClassCache.isMissing(className)) 
+		{
+			if (miss != null) 
+			{
+				miss.finish(className, loader, true);
+			}
+			throw missingClassCache.newException(className);
+		}
+
+		Class<T> clazz;
+		try 
+		{
+			if (loader != null) 
+			{
+				clazz = (Class<T>) loader.loadClass(className);
+			} 
+			else 
+			{
+				clazz = (Class<T>) Class.forName(className);
+			}
+		} 
+		catch (ClassNotFoundException x) 
+		{
+			/* Go through additional loaders. */
+			clazz = loadFromClassLoaders(className);
+
+			if (clazz == null) 
+			{
+				/* Give up. */
+				if (missingClassCache != null) 
+				{
+					missingClassCache.put(className);
+				}
+				if (miss != null) 
+				{
+					miss.finish(className, loader, false);
+				}
+				throw x;
+			}
+		}
+
+		if (classCache != null) 
+		{
+			classCache.put(loader, className, clazz);
+		}
+		recordStartup(className, null);
+		return clazz;
+	}
+
+	/**
+	 * Loads the named class from the additional class loaders. Classes in a
+	 * routed package are only loaded by the loader owning the longest matching
+	 * prefix. In the adaptive order, the loader which resolved the last class
+	 * of the same package is tried first.
+	 *
+	 * @param className the name of the class to load.
+	 * @return the loaded class, or null if not found.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Class<T> loadFromClassLoaders(String className) 
+	{
+		PrefixIndex<ClassLoader> routes = packageIndex;
+		ClassLoader owner = routes != null ? routes.get(className) : null;
+		if (owner != null) 
+		{
+			try 
+			{
+				return (Class<T>) owner.loadClass(className);
+			} 
+			catch (ClassNotFoundException x) 
+			{
+				failedLoaderAttempts.increment();
+				return null;
+			}
+		}
+		List<ClassLoader> loaders = classLoaders;
+		if (loaders.isEmpty()) 
+		{
+			return null;
+		}
+		ConcurrentHashMap<String, ClassLoader> packages = packageLoaders;
+		String packageName = null;
+		ClassLoader preferred = null;
+		if (packages != null) 
+		{
+			int dot = className.lastIndexOf('.');
+			packageName = dot > 0 ? className.substring(0, dot) : "";
+			preferred = packages.get(packageName);
+			if (preferred != null && !loaders.contains(preferred)) 
+			{
+				/* Recorded concurrently with its removal. */
+				packages.remove(packageName, preferred);
+				preferred = null;
+			}
+			if (preferred != null) 
+			{
+				try 
+				{
+					return (Class<T>) preferred.loadClass(className);
+				} 
+				catch (ClassNotFoundException x) 
+				{
+					failedLoaderAttempts.increment();
+				}
+			}
+		}
+		for (ClassLoader l : loaders) 
+		{
+			if (l == preferred) 
+			{
+				continue;
+			}
+			try 
+			{
+				Class<T> clazz = (Class<T>) l.loadClass(className);
+				if (packages != null && (packages.size() < packageLoadersSize || preferred != null)) 
+				{
+					packages.put(packageName, l);
+				}
+				return clazz;
+			} 
+			catch (ClassNotFoundException x) 
+			{
+				failedLoaderAttempts.increment();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a class loader to the end of the additional class loaders. Classes
+	 * not found so far are looked up again.
+	 *
+	 * <p>Classes in the given packages are loaded by this loader only,
+	 * without trying the other additional loaders. A prefix without a
+	 * trailing dot matches the package and its subpackages.</p>
+	 *
+	 * @param loader the class loader.
+	 * @param packages the package prefixes routed to the loader.
+	 * @throws IllegalArgumentException if a prefix is routed to another loader.
+	 */
+	public void addClassLoader(ClassLoader loader, String... packages) 
+	{
+		synchronized (classLoaderLock) 
+		{
+			Map<String, ClassLoader> routes = new HashMap<String, ClassLoader>(packageRoutes);
+			for (String prefix : packages) 
+			{
+				prefix = toPackagePrefix(prefix);
+				ClassLoader routed = routes.put(prefix, loader);
+				if (routed != null && routed != loader) 
+				{
+					throw new IllegalArgumentException("Package " + prefix + " is already routed to " + routed);
+				}
+			}
+			List<ClassLoader> loaders = new ArrayList<ClassLoader>(classLoaders);
+			loaders.add(loader);
+			classLoaders = Collections.unmodifiableList(loaders);
+			if (packages.length > 0) 
+			{
+				packageRoutes.putAll(routes);
+				packageIndex = new PrefixIndex<ClassLoader>(packageRoutes);
+			}
+		}
+		if (missingClassCache != null) 
+		{
+			missingClassCache.clear();
+		}
+	}
+
+	/**
+	 * Removes a class loader from the additional class loaders. Cached classes
+	 * are resolved again, but factories and instances created from classes of
+	 * the loader are not discarded.
+	 *
+	 * @param loader the class loader.
+	 * @return true if the loader was removed, false if it was not an additional class loader.
+	 */
+	public boolean removeClassLoader(ClassLoader loader) 
+	{
+		synchronized (classLoaderLock) 
+		{
+			List<ClassLoader> loaders = new ArrayList<ClassLoader>(classLoaders);
+			if (!loaders.remove(loader)) 
+			{
+				return false;
+			}
+			classLoaders = Collections.unmodifiableList(loaders);
+			if (packageRoutes.values().removeIf(l -> l == loader)) 
+			{
+				packageIndex = packageRoutes.isEmpty() ? null : new PrefixIndex<ClassLoader>(packageRoutes);
+			}
+		}
+		if (packageLoaders != null) 
+		{
+			packageLoaders.values().removeIf(l -> l == loader);
+		}
+		if (classCache != null) 
+		{
+			classCache.clear();
+		}
+		if (missingClassCache != null) 
+		{
+			missingClassCache.clear();
+		}
+		return true;
+	}
+
+	/**
+	 * Splits a list of package prefixes separated by commas or whitespace.
+	 *
+	 * @param packages the list.
+	 * @return the package prefixes.
+	 */
+	private static String[] splitPackages(String packages) 
+	{
+		String trimmed = packages.trim();
+		return trimmed.isEmpty() ? new String[0] : trimmed.split("[,\\s]+");
+	}
+
+	/**
+	 * Normalizes a package prefix to end with a dot, so it does not match
+	 * packages merely sharing the leading characters.
+	 *
+	 * @param prefix the package prefix.
+	 * @return the normalized prefix.
+	 * @throws IllegalArgumentException if the prefix is empty.
+	 */
+	private static String toPackagePrefix(String prefix) 
+	{
+		String trimmed = prefix.trim();
+		if (trimmed.isEmpty() || trimmed.equals(".")) 
+		{
+			throw new IllegalArgumentException("Empty package prefix");
+		}
+		return trimmed.endsWith(".") ? trimmed : trimmed + ".";
+	}
+
+	/**
+	 * Loads the named class using a specified class loader.
+	 *
+	 * @param className the name of the class to load.
+	 * @param loader    the loader to use.
+	 * @return {@inheritDoc} the loaded class.
+	 * @throws ClassNotFoundException if the class was not found.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> Class<T> loadClass(String className, ClassLoader loader) throws ClassNotFoundException 
+	{
+		if (loader != null) 
+		{
+			long start = startTimer();
+			Class<T> clazz = classCache != null ? (Class<T>) classCache.get(loader, className) : null;
+			if (clazz == null) 
+			{
+				clazz = (Class<T>) loader.loadClass(className);
+				if (classCache != null) 
+				{
+					classCache.put(loader, className, clazz);
+				}
+			}
+			record(className, Phase.RESOLVE, start);
+			return clazz;
+		} 
+		else 
+		{
+			return loadClass(className);
+		}
+	}
+
+	/**
+	 * Gets a customized factory for a named class. If no class-specific factory is
+	 * specified but a default factory is, will use the default factory.
+	 *
+	 * <p>
+	 * The outcome of the lookup is remembered per class name, including the
+	 * absence of a factory, and each factory is created only once.
+	 * </p>
+	 *
+	 * @param className the name of the class to load.
+	 * @return {@inheritDoc} the factory, or null if not specified and no default.
+	 * @throws FactoryException if instantiation of the factory fails.
+	 */
+	protected <T> Factory<T> getFactory(String className) throws FactoryException 
+	{
+		if (metrics == null) 
+		{
+			return lookupFactory(className);
+		}
+		long start = System.nanoTime();
+		Factory<T> factory = lookupFactory(className);
+		record(className, Phase.FACTORY_LOOKUP, start);
+		return factory;
+	}
+
+	/**
+	 * Looks up the customized factory for a named class.
+	 *
+	 * @param className the name of the class to load.
+	 * @return the factory, or null if not specified and no default.
+	 * @throws FactoryException if instantiation of the factory fails.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Factory<T> lookupFactory(String className) throws FactoryException 
+	{
+		FactoryHolder holder = objectFactories.get(className);
+		if (holder == null) 
+		{
+			String factoryClass = objectFactoryClasses.get(className);
+			Factory<?> builtIn = factoryClass == null ? getBuiltInFactory(className) : null;
+			if (factoryClass == null && builtIn == null) 
+			{
+				// No named factory for this; try the default, if one exists
+				factoryClass = objectFactoryClasses.get(DEFAULT_FACTORY);
+			}
+
+			if (builtIn != null) 
+			{
+				holder = new FactoryHolder(builtIn.getClass().getName(), builtIn);
+			} 
+			else if (factoryClass != null) 
+			{
+				holder = new FactoryHolder(factoryClass, null);
+			} 
+			else 
+			{
+				/* Do not let arbitrary requested names grow the map without bound. */
+				if (noFactories.get() < noFactoriesSize
+						&& objectFactories.putIfAbsent(className, FactoryHolder.NONE) == null) 
+				{
+					noFactories.incrementAndGet();
+				}
+				return null;
+			}
+			FactoryHolder _holder = objectFactories.putIfAbsent(className, holder);
+			if (_holder != null) 
+			{
+				// Already looked up - take first instance
+				holder = _holder;
+			}
+		}
+
+		Factory<T> factory = (Factory<T>) holder.factory;
+		if (factory == null && holder != FactoryHolder.NONE) 
+		{
+			factory = createFactory(holder, className);
+		}
+		if (factory != null) 
+		{
+			recordStartup(className, null);
+		}
+		return factory;
+	}
+
+	/**
+	 * Creates the factory of a holder, unless another thread already did.
+	 *
+	 * @param holder    the holder of the factory.
+	 * @param className the name of the production class.
+	 * @return the factory.
+	 * @throws FactoryException if instantiation of the factory fails.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Factory<T> createFactory(FactoryHolder holder, String className) throws FactoryException 
+	{
+		synchronized (holder) 
+		{
+			Factory<T> factory = (Factory<T>) holder.factory;
+			if (factory == null) 
+			{
+				try 
+				{
+					if (holder.builtIn != null) 
+					{
+						factory = (Factory<T>) holder.builtIn;
+					} 
+					else 
+					{
+						/* The factory class itself is not requested by the application. */
+						boolean suspended = suspendRecording();
+						try 
+						{
+							factory = (Factory<T>) getInstance(loadClass(holder.factoryClass));
+						} 
+						finally 
+						{
+							resumeRecording(suspended);
+						}
+					}
+					factory.init(className);
+				} 
+				catch (ClassNotFoundException x) 
+				{
+					throw new FactoryException("Instantiation failed for class " + holder.factoryClass, x);
+				} 
+				catch (ClassCastException x) 
+				{
+					throw new FactoryException("Incorrect factory " + holder.factoryClass + " for class " + className, x);
+				}
+				holder.factory = factory;
+			}
+			return factory;
+		}
+	}
+
+	/**
+	 * Gets a new, uninitialized factory for a class configured with a static
+	 * factory method or a prototype.
+	 *
+	 * @param className the name of the production class.
+	 * @return the factory, or null if the class has none of these.
+	 */
+	private Factory<?> getBuiltInFactory(String className) 
+	{
+		String factoryMethod = factoryMethods.get(className);
+		if (factoryMethod != null) 
+		{
+			return new StaticMethodFactory<Object>(this, factoryMethod);
+		}
+		String copy = prototypeCopies.get(className);
+		if (copy != null) 
+		{
+			return new PrototypeFactory<Object>(this, PrototypeFactory.Copy.parse(copy), null);
+		}
+		return null;
+	}
+
+	/**
+	 * Registers a prototype for a named class, replacing any factory
+	 * looked up for the class so far. Classes configured with an object
+	 * factory or a factory method cannot be given a prototype.
+	 *
+	 * @param className the name of the class.
+	 * @param prototype the prototype, null to remove a registered prototype.
+	 * @throws FactoryException if the prototype cannot be copied or the class
+	 *         is configured with another factory.
+	 */
+	@Override
+	public void setPrototype(String className, Object prototype) throws FactoryException 
+	{
+		if (objectFactoryClasses.containsKey(className) || factoryMethods.containsKey(className)) 
+		{
+			throw new FactoryException("Another factory is configured for " + className);
+		}
+		if (prototype == null) 
+		{
+			removeFactory(className);
+			return;
+		}
+		String copy = prototypeCopies.get(className);
+		PrototypeFactory<Object> factory = new PrototypeFactory<Object>(this,
+				copy != null ? PrototypeFactory.Copy.parse(copy) : null, prototype);
+		factory.init(className);
+		FactoryHolder holder = new FactoryHolder(PrototypeFactory.class.getName(), factory);
+		holder.factory = factory;
+		if (objectFactories.put(className, holder) == FactoryHolder.NONE) 
+		{
+			noFactories.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes the factory looked up for a class name.
+	 *
+	 * @param className the name of the class.
+	 */
+	private void removeFactory(String className) 
+	{
+		if (objectFactories.remove(className) == FactoryHolder.NONE) 
+		{
+			noFactories.decrementAndGet();
+		}
+	}
+
+	/**
+	 * The customized factory of a class name, created on first use.
+	 */
+	private static final class FactoryHolder 
+	{
+		/**
+		 * The holder of class names without a factory.
+		 */
+		static final FactoryHolder NONE = new FactoryHolder(null, null);
+
+		/**
+		 * The class name of the factory.
+		 */
+		final String factoryClass;
+
+		/**
+		 * The built-in factory to initialize on first use, null for factory classes.
+		 */
+		final Factory<?> builtIn;
+
+		/**
+		 * The factory, null until created.
+		 */
+		volatile Factory<?> factory;
+
+		/**
+		 * @param factoryClass the class name of the factory
+		 * @param builtIn      the built-in factory, or null
+		 */
+		FactoryHolder(String factoryClass, Factory<?> builtIn) 
+		{
+			this.factoryClass = factoryClass;
+			this.builtIn = builtIn;
+		}
+	}
+
+	/**
+	 * The shared instance of a singleton scoped class, created on first use.
+	 */
+	private static final class InstanceHolder 
+	{
+		/**
+		 * The instance, null until created.
+		 */
+		volatile Object instance;
+	}
+
+	/**
+	 * The runtime types of constructor or factory method parameters, as a cache key.
+	 */
+	static final class ArgumentTypes 
+	{
+		/**
+		 * The types, null for null parameters.
+		 */
+		private final Class<?>[] types;
+
+		/**
+		 * The hash code.
+		 */
+		private final int hash;
+
+		/**
+		 * @param types the types
+		 */
+		ArgumentTypes(Class<?>[] types) 
+		{
+			this.types = types;
+			this.hash = Arrays.hashCode(types);
+		}
+
+		@Override
+		public int hashCode() 
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) 
+		{
+			return obj instanceof ArgumentTypes && Arrays.equals(types, ((ArgumentTypes) obj).types);
+		}
+	}
+
+	/**
+	 * Gets a snapshot of the statistics collected by the service.
+	 *
+	 * @return the statistics, empty if metrics are disabled.
+	 */
+	@Override
+	public FactoryStatistics getStatistics() 
+	{
+		return metrics != null ? metrics.snapshot() : FactoryStatistics.EMPTY;
+	}
+
+	/**
+	 * Records a class requested by the application in the startup list.
+	 * Classes loaded during initialization and by warm up are not recorded, so
+	 * the list does not keep itself alive across restarts.
+	 *
+	 * @param className the class name.
+	 * @param signature the constructor signature, null for none.
+	 */
+	private void recordStartup(String className, String[] signature) 
+	{
+		if (startupRecording && unrecorded.get() == null) {
+			startupList.record(className, signature);
+		}
+	}
+
+	/**
+	 * Stops recording classes loaded by the current thread in the startup list.
+	 *
+	 * @return true if recording was stopped, false if it was already stopped.
+	 */
+	private boolean suspendRecording() 
+	{
+		if (unrecorded.get() != null) {
+			return false;
+		}
+		unrecorded.set(Boolean.TRUE);
+		return true;
+	}
+
+	/**
+	 * Resumes recording classes loaded by the current thread in the startup list.
+	 *
+	 * @param suspended the result of {@link #suspendRecording()}.
+	 */
+	private void resumeRecording(boolean suspended) 
+	{
+		if (suspended) {
+			unrecorded.remove();
+		}
+	}
+
+	/**
+	 * Starts timing a phase if metrics are enabled.
+	 *
+	 * @return the start time, or 0 if metrics are disabled.
+	 */
+	private long startTimer() 
+	{
+		return metrics != null ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Records the duration of a phase if metrics are enabled.
+	 *
+	 * @param className the class name.
+	 * @param phase     the phase.
+	 * @param start     the start time returned by {@link #startTimer()}.
+	 */
+	private void record(String className, Phase phase, long start) 
+	{
+		if (metrics != null) 
+		{
+			metrics.record(className, phase, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Resolves a named class and its factory ahead of the first instantiation.
+	 * Classes without a factory are initialized and their constructor is
+	 * resolved. Warmed up classes are not recorded in the startup list.
+	 *
+	 * @param className the name of the class.
+	 * @param signature the signature of the constructor, null or empty for the
+	 *                  no-arg constructor.
+	 * @throws FactoryException if the class or its factory cannot be resolved.
+	 */
+	protected void warmUp(String className, String[] signature) throws FactoryException 
+	{
+		boolean suspended = suspendRecording();
+		try {
+			warmUpClass(className, signature);
+		} finally {
+			resumeRecording(suspended);
+		}
+	}
+
+	/**
+	 * Initializes a class and resolves its constructor, or creates its factory.
+	 *
+	 * @param className the name of the class.
+	 * @param signature the signature of the constructor, null or empty for the
+	 *                  no-arg constructor.
+	 * @throws FactoryException if the class or its factory cannot be resolved.
+	 */
+	private void warmUpClass(String className, String[] signature) throws FactoryException 
+	{
+		if (getFactory(className) == null) {
+			try {
+				Class<?> clazz = loadClass(className);
+				Class.forName(clazz.getName(), true, clazz.getClassLoader());
+				if (signature == null || signature.length == 0) {
+					Instantiator.forClass(clazz);
+				} else {
+					getConstructorInvoker(clazz, null, signature);
+				}
+			} catch (ClassNotFoundException | NoSuchMethodException | LinkageError x) {
+				throw new FactoryException("Instantiation failed for class " + className, x);
+			}
+		}
+	}
+
+	/**
+	 * Warms up classes and factories in parallel within a time budget.
+	 * Entries which fail or do not finish in time are reported, but do not
+	 * cause an error.
+	 *
+	 * @param entries     the class names and constructor signatures.
+	 * @param parallelism the number of threads.
+	 * @param budget      the time budget in milliseconds.
+	 * @return the report.
+	 */
+	protected WarmUpReport warmUp(List<Map.Entry<String, String[]>> entries, int parallelism, long budget) 
+	{
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(budget);
+		List<String> warmed = new ArrayList<String>();
+		Map<String, String> failed = new LinkedHashMap<String, String>();
+		List<String> pending = new ArrayList<String>();
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			Map<String, Future<Object>> tasks = new LinkedHashMap<String, Future<Object>>();
+			for (final Map.Entry<String, String[]> entry : entries) {
+				String name = entry.getValue().length == 0 ? entry.getKey()
+						: entry.getKey() + "(" + String.join(",", entry.getValue()) + ")";
+				tasks.put(name, pool.submit(() -> {
+					warmUp(entry.getKey(), entry.getValue());
+					return null;
+				}));
+			}
+
+			for (Map.Entry<String, Future<Object>> task : tasks.entrySet()) {
+				try {
+					task.getValue().get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+					warmed.add(task.getKey());
+				} catch (ExecutionException x) {
+					/* The pool wraps checked exceptions of tasks in plain runtime exceptions. */
+					Throwable cause = x.getCause();
+					while (cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+						cause = cause.getCause();
+					}
+					if (cause instanceof FactoryException && cause.getCause() != null) {
+						cause = cause.getCause();
+					}
+					failed.put(task.getKey(), String.valueOf(cause));
+				} catch (TimeoutException x) {
+					pending.add(task.getKey());
+				} catch (InterruptedException x) {
+					Thread.currentThread().interrupt();
+					pending.add(task.getKey());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return new WarmUpReport(warmed, failed, pending, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	/**
+	 * Gets the outcome of the warm up done at initialization.
+	 *
+	 * @return the report, or null if no warm up was configured.
+	 */
+	public WarmUpReport getWarmUpReport() 
+	{
+		return warmUpReport;
+	}
+
+	/**
+	 * Gets the outcome of replaying the startup list recorded by the previous
+	 * run in the background.
+	 *
+	 * @return the report, or null if no startup list was replayed or the replay
+	 *         is still running.
+	 */
+	public WarmUpReport getReplayReport() 
+	{
+		return replayReport;
+	}
+
+	/**
+	 * Starts replaying the startup list recorded by the previous run in the
+	 * background. A missing or unreadable file is logged and ignored.
+	 */
+	private void replayStartupList() 
+	{
+		final List<Map.Entry<String, String[]>> entries;
+		try 
+		{
+			entries = ClassList.read(startupListFile);
+		} 
+		catch (IOException x) 
+		{
+			if (getLogger() != null) 
+			{
+				getLogger().warn("Ignoring unreadable startup list " + startupListFile, x);
+			}
+			return;
+		}
+		if (entries.isEmpty()) 
+		{
+			return;
+		}
+
+		replayThread = new Thread(() -> {
+			WarmUpReport report = warmUp(entries, replayParallelism, replayBudget);
+			if (getLogger() != null) 
+			{
+				getLogger().info("Startup list " + startupListFile + ": " + report);
+			}
+			replayReport = report;
+		}, "fulcrum-factory-replay");
+		replayThread.setDaemon(true);
+		replayThread.start();
+	}
+
+	/**
+	 * Stops replaying the startup list and waits for the replay to finish.
+	 */
+	private void stopReplay() 
+	{
+		if (replayThread != null) 
+		{
+			replayThread.interrupt();
+			try 
+			{
+				replayThread.join();
+			} 
+			catch (InterruptedException x) 
+			{
+				Thread.currentThread().interrupt();
+			}
+			replayThread = null;
+		}
+	}
+
+	/**
+	 * Stops replaying the startup list, waits for the replay to finish and
+	 * writes the classes requested since initialization to the startup list
+	 * file.
+	 */
+	private void writeStartupList() 
+	{
+		startupRecording = false;
+		stopReplay();
+		/* Also written if empty, so classes no longer requested are dropped. */
+		try 
+		{
+			startupList.write(startupListFile);
+		} 
+		catch (IOException x) 
+		{
+			if (getLogger() != null) 
+			{
+				getLogger().warn("Writing startup list " + startupListFile + " failed", x);
+			}
+		}
+		startupList.clear();
+	}
+
+	/**
+	 * Clears the class caches and the object pools.
+	 */
+	void clearCaches() 
+	{
+		if (classCache != null) 
+		{
+			classCache.clear();
+		}
+		if (missingClassCache != null) 
+		{
+			missingClassCache.clear();
+		}
+		for (ObjectPool<?> pool : objectPools.values()) 
+		{
+			pool.clear();
+		}
+		if (packageLoaders != null) 
+		{
+			packageLoaders.clear();
+		}
+	}
+
+	/**
+	 * Resets the collected metrics.
+	 */
+	void resetStatistics() 
+	{
+		if (metrics != null) 
+		{
+			metrics.reset();
+		}
+	}
+
+	/**
+	 * @return the configured factory class names keyed by production class name.
+	 */
+	Map<String, String> getObjectFactoryClasses() 
+	{
+		return Collections.unmodifiableMap(objectFactoryClasses);
+	}
+
+	/**
+	 * @return the number of class names remembered to have no factory.
+	 */
+	int getNoFactoryCount() 
+	{
+		return noFactories.get();
+	}
+
+	/**
+	 * @return the factories created so far keyed by production class name.
+	 */
+	Map<String, Factory<?>> getFactories() 
+	{
+		Map<String, Factory<?>> factories = new HashMap<String, Factory<?>>();
+		for (Map.Entry<String, FactoryHolder> entry : objectFactories.entrySet()) 
+		{
+			Factory<?> factory = entry.getValue().factory;
+			if (factory != null) 
+			{
+				factories.put(entry.getKey(), factory);
+			}
+		}
+		return factories;
+	}
+
+	/**
+	 * @return the additional class loaders.
+	 */
+	List<ClassLoader> getClassLoaders() 
+	{
+		return classLoaders;
+	}
+
+	/**
+	 * @return the number of additional class loaders which failed to load a class.
+	 */
+	long getFailedLoaderAttempts() 
+	{
+		return failedLoaderAttempts.sum();
+	}
+
+	/**
+	 * @return the resolved class cache, null if disabled.
+	 */
+	ClassCache getClassCache() 
+	{
+		return classCache;
+	}
+
+	/**
+	 * @return the cache of missing classes, null if disabled.
+	 */
+	MissingClassCache getMissingClassCache() 
+	{
+		return missingClassCache;
+	}
+
+	/**
+	 * @return the object pools keyed by class name.
+	 */
+	Map<String, ObjectPool<?>> getObjectPools() 
+	{
+		return Collections.unmodifiableMap(objectPools);
+	}
+
+	/**
+	 * @return the prefetch buffers keyed by class name.
+	 */
+	Map<String, PrefetchBuffer<?>> getPrefetchBuffers() 
+	{
+		return Collections.unmodifiableMap(prefetchBuffers);
+	}
+
+	// ---------------- Avalon Lifecycle Methods ---------------------
+
+	/* (non-Javadoc)
+	 * Avalon component lifecycle method
+	 * @see org.apache.avalon.framework.configuration.Configurable#configure(org.apache.avalon.framework.configuration.Configuration)
+	 */
+	@Override
+	public void configure(Configuration conf) throws ConfigurationException 
 	{
-		if (signature != null) {
-			/* We have parameters. */
-			ClassLoader tempLoader;
-			ClassLoader loader = clazz.getClassLoader();
-			Class<?>[] sign = new Class[signature.length];
-			for (int i = 0; i < signature.length; i++) {
-				/* Check primitive types. */
-				sign[i] = getPrimitiveClass(signature[i]);
-				if (sign[i] == null) {
-					/* Not a primitive one, continue building. */
-					if (loader != null) {
-						/* Use the class loader of the target object. */
-						sign[i] = loader.loadClass(signature[i]);
-						tempLoader = sign[i].getClassLoader();
-						if (params[i] != null && tempLoader != null
-								&& !tempLoader.equals(params[i].getClass().getClassLoader())) {
-							/*
-							 * The class uses a different class loader, switch the parameter.
-							 */
-							params[i] = switchObjectContext(params[i], loader);
-						}
-					} else {
-						/* Use the default class loader. */
-						sign[i] = loadClass(signature[i]);
+		final Configuration[] loaders = conf.getChildren(CLASS_LOADER);
+		if (loaders != null) 
+		{
+			loaderNames = new String[loaders.length];
+			loaderPackages = new String[loaders.length][];
+			Map<String, String> routes = new HashMap<String, String>();
+			for (int i = 0; i < loaders.length; i++) 
+			{
+				loaderNames[i] = loaders[i].getValue();
+				loaderPackages[i] = splitPackages(loaders[i].getAttribute(PACKAGES, ""));
+				for (String prefix : loaderPackages[i]) 
+				{
+					String routed = routes.put(toPackagePrefix(prefix), loaderNames[i]);
+					if (routed != null) 
+					{
+						throw new ConfigurationException("Package " + prefix + " is routed to both "
+								+ routed + " and " + loaderNames[i], loaders[i]);
 					}
 				}
 			}
-			return sign;
-		} else {
-			return null;
 		}
-	}
 
-	/**
-	 * Switches an object into the context of a different class loader.
-	 *
-	 * @param object an object to switch.
-	 * @param loader the ClassLoader to use
-	 * @param loader the loader of the new context.
-	 * @return the object
-	 */
-	protected Object switchObjectContext(Object object, ClassLoader loader) 
-	{
-		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		final Configuration factories = conf.getChild(OBJECT_FACTORY, false);
+		if (factories != null) 
+		{
+			// Store the factory to the table as a string and
+			// instantiate it by using the service when needed.
+			Configuration[] nameVal = factories.getChildren();
+			for (Configuration entry : nameVal)
+				objectFactoryClasses.put(entry.getName(), entry.getValue());
 
-		try 
+		}
+
+		final Configuration methods = conf.getChild(FACTORY_METHOD, false);
+		if (methods != null) 
 		{
-			ObjectOutputStream out = new ObjectOutputStream(bout);
-			out.writeObject(object);
-			out.flush();
-		} 
-		catch (IOException x) 
+			for (Configuration entry : methods.getChildren()) 
+			{
+				if (objectFactoryClasses.containsKey(entry.getName())) 
+				{
+					throw new ConfigurationException("Both an object factory and a factory method configured for "
+							+ entry.getName() + " in DefaultFactoryService");
+				}
+				factoryMethods.put(entry.getName(), entry.getValue().trim());
+			}
+		}
+
+		final Configuration prototypes = conf.getChild(PROTOTYPE, false);
+		if (prototypes != null) 
 		{
-			return object;
+			for (Configuration entry : prototypes.getChildren()) 
+			{
+				if (objectFactoryClasses.containsKey(entry.getName()) || factoryMethods.containsKey(entry.getName())) 
+				{
+					throw new ConfigurationException("Both a prototype and another factory configured for "
+							+ entry.getName() + " in DefaultFactoryService");
+				}
+				String copy = entry.getValue(AUTO_COPY).trim();
+				try 
+				{
+					PrototypeFactory.Copy.parse(copy);
+				} 
+				catch (IllegalArgumentException x) 
+				{
+					throw new ConfigurationException("Invalid prototype copy mode '" + copy + "' for "
+							+ entry.getName() + " in DefaultFactoryService", x);
+				}
+				prototypeCopies.put(entry.getName(), copy);
+			}
 		}
 
-		ByteArrayInputStream bin = new ByteArrayInputStream(bout.toByteArray());
-		ObjectInputStreamForContext in = null;
+		contextSwitchStrategyName = conf.getChild(CONTEXT_SWITCH_STRATEGY).getValue(null);
 
-		try 
-		{
-			in = new ObjectInputStreamForContext(bin, loader);
-			return in.readObject();
-		} 
-		catch (Exception x) 
+		final Configuration metricsConf = conf.getChild(METRICS);
+		metrics = metricsConf.getAttributeAsBoolean(ENABLED, false)
+				? new FactoryMetrics(metricsConf.getAttributeAsInteger(METRICS_CLASSES, FactoryMetrics.DEFAULT_SIZE)) : null;
+
+		final Configuration pools = conf.getChild(OBJECT_POOL, false);
+		if (pools != null) 
 		{
-			return object;
-		} 
-		finally 
+			for (Configuration entry : pools.getChildren()) 
+			{
+				int maxSize = entry.getValueAsInteger();
+				if (maxSize > 0) 
+				{
+					objectPools.put(entry.getName(), new ObjectPool<Object>(maxSize));
+				}
+			}
+		}
+
+		final Configuration scoped = conf.getChild(SCOPE, false);
+		if (scoped != null) 
 		{
-			if (in != null) 
+			for (Configuration entry : scoped.getChildren()) 
 			{
+				InstanceScope scope;
 				try 
 				{
-					in.close();
+					scope = InstanceScope.parse(entry.getValue());
 				} 
-				catch (IOException e) 
+				catch (IllegalArgumentException x) 
+				{
+					throw new ConfigurationException("Invalid scope '" + entry.getValue() + "' for "
+							+ entry.getName() + " in DefaultFactoryService", x);
+				}
+				if (scope != InstanceScope.PROTOTYPE) 
 				{
-					// close quietly
+					if (objectPools.containsKey(entry.getName())) 
+					{
+						throw new ConfigurationException("Both a pool and a shared scope configured for "
+								+ entry.getName() + " in DefaultFactoryService");
+					}
+					scopes.put(entry.getName(), scope);
 				}
 			}
 		}
-	}
 
-	/**
-	 * Loads the named class using the default class loader.
-	 *
-	 * @param className the name of the class to load.
-	 * @return {@inheritDoc} the loaded class.
-	 * @throws ClassNotFoundException if the class was not found.
-	 */
-	@SuppressWarnings("unchecked")
-	protected <T> Class<T> loadClass(String className) throws ClassNotFoundException 
-	{
-		ClassLoader loader = this.getClass().getClassLoader();
-		try 
+		final Configuration prefetch = conf.getChild(PREFETCH, false);
+		if (prefetch != null) 
 		{
-			Class<T> clazz;
-
-			if (loader != null) 
+			for (Configuration entry : prefetch.getChildren()) 
 			{
-				clazz = (Class<T>) loader.loadClass(className);
-			} 
-			else 
+				int depth = entry.getAttributeAsInteger(DEPTH, PrefetchBuffer.DEFAULT_DEPTH);
+				int lowWater = entry.getAttributeAsInteger(LOW_WATER, depth / 4);
+				try 
+				{
+					prefetchBuffers.put(entry.getName(), new PrefetchBuffer<Object>(depth, lowWater));
+				} 
+				catch (IllegalArgumentException x) 
+				{
+					throw new ConfigurationException(x.getMessage() + " of prefetched " + entry.getName()
+							+ " for DefaultFactoryService", x);
+				}
+			}
+			prefetchParallelism = prefetch.getAttributeAsInteger(PARALLELISM, 1);
+			if (prefetchParallelism < 1) 
 			{
-				clazz = (Class<T>) Class.forName(className);
+				throw new ConfigurationException("Invalid prefetch parallelism " + prefetchParallelism
+						+ " for DefaultFactoryService");
 			}
+		}
 
-			return clazz;
-		} 
-		catch (ClassNotFoundException x) 
+		final Configuration async = conf.getChild(ASYNC);
+		asyncExecutorName = async.getAttribute(EXECUTOR, COMMON_EXECUTOR).trim();
+		asyncThreads = async.getAttributeAsInteger(THREADS, Runtime.getRuntime().availableProcessors());
+		if (!COMMON_EXECUTOR.equals(asyncExecutorName) && !FIXED_EXECUTOR.equals(asyncExecutorName)
+				&& !VIRTUAL_EXECUTOR.equals(asyncExecutorName)) 
 		{
-			/* Go through additional loaders. */
-			for (ClassLoader l : classLoaders) 
+			throw new ConfigurationException("Invalid async executor '" + asyncExecutorName
+					+ "' for DefaultFactoryService");
+		}
+		if (asyncThreads < 1) 
+		{
+			throw new ConfigurationException("Invalid async threads " + asyncThreads + " for DefaultFactoryService");
+		}
+
+		final int cacheSize = conf.getChild(CLASS_CACHE).getAttributeAsInteger(CACHE_SIZE, ClassCache.DEFAULT_SIZE);
+		classCache = cacheSize > 0 ? new ClassCache(cacheSize) : null;
+		noFactoriesSize = cacheSize > 0 ? cacheSize : ClassCache.DEFAULT_SIZE;
+
+		final Configuration missing = conf.getChild(MISSING_CLASS_CACHE);
+		final int missingSize = missing.getAttributeAsInteger(CACHE_SIZE, MissingClassCache.DEFAULT_SIZE);
+		final long missingTtl = missing.getAttributeAsLong(CACHE_TTL, MissingClassCache.DEFAULT_TTL);
+		missingClassCache = missingSize > 0 && missingTtl > 0 ? new MissingClassCache(missingSize, missingTtl) : null;
+
+		final Configuration adaptive = conf.getChild(ADAPTIVE_ORDER);
+		packageLoadersSize = adaptive.getAttributeAsInteger(CACHE_SIZE, DEFAULT_ADAPTIVE_SIZE);
+		packageLoaders = adaptive.getAttributeAsBoolean(ENABLED, false) && packageLoadersSize > 0
+				? new ConcurrentHashMap<String, ClassLoader>() : null;
+
+		final Configuration warmUp = conf.getChild(WARM_UP, false);
+		if (warmUp != null) 
+		{
+			warmUpEntries = new ArrayList<Map.Entry<String, String[]>>();
+			if (warmUp.getAttributeAsBoolean(FACTORIES, true)) 
 			{
-				try 
+				for (String className : objectFactoryClasses.keySet()) 
 				{
-					return (Class<T>) l.loadClass(className);
-				} 
-				catch (ClassNotFoundException xx) 
+					if (!DEFAULT_FACTORY.equals(className)) 
+					{
+						warmUpEntries.add(new AbstractMap.SimpleImmutableEntry<String, String[]>(className, NO_SIGNATURE));
+					}
+				}
+				List<String> builtIns = new ArrayList<String>(factoryMethods.keySet());
+				builtIns.addAll(prototypeCopies.keySet());
+				for (String className : builtIns) 
 				{
-					// continue
+					warmUpEntries.add(new AbstractMap.SimpleImmutableEntry<String, String[]>(className, NO_SIGNATURE));
 				}
 			}
-			/* Give up. */
-			throw x;
+			for (Configuration entry : warmUp.getChildren(WARM_UP_CLASS)) 
+			{
+				String signature = entry.getAttribute(SIGNATURE, "").trim();
+				warmUpEntries.add(new AbstractMap.SimpleImmutableEntry<String, String[]>(entry.getValue().trim(),
+						signature.isEmpty() ? NO_SIGNATURE : signature.split("[,\\s]+")));
+			}
+			warmUpParallelism = warmUp.getAttributeAsInteger(PARALLELISM, Runtime.getRuntime().availableProcessors());
+			if (warmUpParallelism < 1) 
+			{
+				throw new ConfigurationException("Invalid warm up parallelism " + warmUpParallelism
+						+ " for DefaultFactoryService");
+			}
+			warmUpBudget = warmUp.getAttributeAsLong(BUDGET, DEFAULT_BUDGET);
 		}
-	}
 
-	/**
-	 * Loads the named class using a specified class loader.
-	 *
-	 * @param className the name of the class to load.
-	 * @param loader    the loader to use.
-	 * @return {@inheritDoc} the loaded class.
-	 * @throws ClassNotFoundException if the class was not found.
-	 */
-	@SuppressWarnings("unchecked")
-	protected <T> Class<T> loadClass(String className, ClassLoader loader) throws ClassNotFoundException 
-	{
-		if (loader != null) 
+		final Configuration list = conf.getChild(STARTUP_LIST, false);
+		if (list != null) 
 		{
-			return (Class<T>) loader.loadClass(className);
+			startupListFile = Paths.get(list.getAttribute(FILE));
+			startupList = new ClassList(list.getAttributeAsInteger(CACHE_SIZE, ClassList.DEFAULT_SIZE));
+			replayParallelism = list.getAttributeAsInteger(PARALLELISM, Runtime.getRuntime().availableProcessors());
+			if (replayParallelism < 1) 
+			{
+				throw new ConfigurationException("Invalid startup list parallelism " + replayParallelism
+						+ " for DefaultFactoryService");
+			}
+			replayBudget = list.getAttributeAsLong(BUDGET, DEFAULT_REPLAY_BUDGET);
 		} 
 		else 
 		{
-			return loadClass(className);
+			startupListFile = null;
+			startupList = null;
+		}
+
+		final Configuration jmx = conf.getChild(JMX);
+		objectName = null;
+		if (jmx.getAttributeAsBoolean(ENABLED, false)) 
+		{
+			String name = jmx.getAttribute(JMX_NAME, Integer.toHexString(System.identityHashCode(this)));
+			try 
+			{
+				objectName = new ObjectName(JMX_DOMAIN + name);
+			} 
+			catch (MalformedObjectNameException x) 
+			{
+				throw new ConfigurationException("Invalid MXBean name '" + name + "' for DefaultFactoryService", x);
+			}
 		}
 	}
 
 	/**
-	 * Gets a customized factory for a named class. If no class-specific factory is
-	 * specified but a default factory is, will use the default factory.
+	 * Avalon component lifecycle method Initializes the service by loading default
+	 * class loaders and customized object factories.
 	 *
-	 * @param className the name of the class to load.
-	 * @return {@inheritDoc} the factory, or null if not specified and no default.
-	 * @throws FactoryException if instantiation of the factory fails.
+	 * @throws Exception if initialization fails.
 	 */
-	@SuppressWarnings("unchecked")
-	protected <T> Factory<T> getFactory(String className) throws FactoryException 
+	@Override
+	public void initialize() throws Exception 
 	{
-		Factory<T> factory = (Factory<T>) objectFactories.get(className);
-		if (factory == null) 
+		if (loaderNames != null) 
 		{
-			// No named factory for this; try the default, if one exists
-			factory = (Factory<T>) objectFactories.get(DEFAULT_FACTORY);
+			for (int i = 0; i < loaderNames.length; i++) 
+			{
+				String className = loaderNames[i];
+				try 
+				{
+					addClassLoader((ClassLoader) getInstance(loadClass(className)), loaderPackages[i]);
+				} 
+				catch (Exception x) 
+				{
+					throw new Exception("No such class loader '" + className + "' for DefaultFactoryService", x);
+				}
+			}
+			loaderNames = null;
+			loaderPackages = null;
 		}
-		
-		if (factory == null) {
-			
-			/* Not yet instantiated... */
-			String factoryClass = objectFactoryClasses.get(className);
-			if (factoryClass == null) 
+
+		if (contextSwitchStrategyName != null) 
+		{
+			try 
 			{
-				factoryClass = objectFactoryClasses.get(DEFAULT_FACTORY);
+				contextSwitchStrategy = (ContextSwitchStrategy) getInstance(loadClass(contextSwitchStrategyName));
+			} 
+			catch (Exception x) 
+			{
+				throw new Exception("No such context switch strategy '" + contextSwitchStrategyName
+						+ "' for DefaultFactoryService", x);
 			}
-			
-			if (factoryClass == null) {
-				return null;
+			contextSwitchStrategyName = null;
+		}
+
+		if (objectName != null) 
+		{
+			try 
+			{
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new FactoryServiceManagement(this), objectName);
+			} 
+			catch (JMException x) 
+			{
+				ObjectName name = objectName;
+				objectName = null;
+				throw new Exception("Registration of MXBean '" + name + "' failed for DefaultFactoryService", x);
 			}
+		}
 
-			try {
-				factory = getInstance(factoryClass);
-				factory.init(className);
+		/* Threads are started last and stopped again if initialization fails. */
+		try 
+		{
+			if (VIRTUAL_EXECUTOR.equals(asyncExecutorName)) 
+			{
+				ownedExecutor = newVirtualThreadExecutor();
+				if (ownedExecutor == null && getLogger() != null) 
+				{
+					getLogger().info("Virtual threads not available, using the common pool for DefaultFactoryService");
+				}
 			} 
-			catch (ClassCastException x) 
+			else if (FIXED_EXECUTOR.equals(asyncExecutorName)) 
+			{
+				final AtomicInteger threadCount = new AtomicInteger();
+				ownedExecutor = Executors.newFixedThreadPool(asyncThreads, r -> {
+					Thread thread = new Thread(r, "fulcrum-factory-async-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			asyncExecutor = ownedExecutor != null ? ownedExecutor : ForkJoinPool.commonPool();
+
+			if (!prefetchBuffers.isEmpty()) 
+			{
+				final AtomicInteger threadCount = new AtomicInteger();
+				prefetchExecutor = Executors.newFixedThreadPool(prefetchParallelism, r -> {
+					Thread thread = new Thread(r, "fulcrum-factory-prefetch-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+				for (Map.Entry<String, PrefetchBuffer<?>> entry : prefetchBuffers.entrySet()) 
+				{
+					scheduleRefill(entry.getKey(), entry.getValue());
+				}
+			}
+
+			if (warmUpEntries != null) 
 			{
-				throw new FactoryException("Incorrect factory " + factoryClass + " for class " + className, x);
+				warmUpReport = warmUp(warmUpEntries, warmUpParallelism, warmUpBudget);
+				warmUpEntries = null;
+				if (getLogger() != null) 
+				{
+					getLogger().info(warmUpReport.toString());
+				}
 			}
-			
-			Factory<T> _factory = (Factory<T>) objectFactories.putIfAbsent(className, factory);
-			if (_factory != null) 
+
+			if (startupList != null) 
 			{
-				// Already created - take first instance
-				factory = _factory;
+				replayStartupList();
 			}
+		} 
+		catch (Exception | Error x) 
+		{
+			stopThreads();
+			unregisterMBean();
+			throw x;
 		}
 
-		return factory;
+		startupRecording = startupList != null;
 	}
 
-	// ---------------- Avalon Lifecycle Methods ---------------------
-
-	/* (non-Javadoc)
-	 * Avalon component lifecycle method
-	 * @see org.apache.avalon.framework.configuration.Configurable#configure(org.apache.avalon.framework.configuration.Configuration)
+	/**
+	 * Creates an executor running each task on a new virtual thread, if the
+	 * runtime supports them.
+	 *
+	 * @return the executor, or null if virtual threads are not available.
 	 */
-	@Override
-	public void configure(Configuration conf) throws ConfigurationException 
+	private static ExecutorService newVirtualThreadExecutor() 
 	{
-		final Configuration[] loaders = conf.getChildren(CLASS_LOADER);
-		if (loaders != null) 
+		try 
 		{
-			loaderNames = new String[loaders.length];
-			for (int i = 0; i < loaders.length; i++) 
-			{
-				loaderNames[i] = loaders[i].getValue();
-			}
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} 
+		catch (ReflectiveOperationException x) 
+		{
+			// before Java 21, or a preview feature not enabled
+			return null;
 		}
+	}
 
-		final Configuration factories = conf.getChild(OBJECT_FACTORY, false);
-		if (factories != null) 
+	/**
+	 * Shuts down the executors started by the service.
+	 */
+	private void stopThreads() 
+	{
+		if (prefetchExecutor != null) 
 		{
-			// Store the factory to the table as a string and
-			// instantiate it by using the service when needed.
-			Configuration[] nameVal = factories.getChildren();
-			for (Configuration entry : nameVal)
-				objectFactoryClasses.put(entry.getName(), entry.getValue());
-
+			prefetchExecutor.shutdownNow();
+			prefetchExecutor = null;
+		}
+		if (ownedExecutor != null) 
+		{
+			ownedExecutor.shutdown();
+			ownedExecutor = null;
+			asyncExecutor = ForkJoinPool.commonPool();
 		}
+		stopReplay();
 	}
 
 	/**
-	 * Avalon component lifecycle method Initializes the service by loading default
-	 * class loaders and customized object factories.
-	 *
-	 * @throws Exception if initialization fails.
+	 * Unregisters the management bean of the service, if registered.
 	 */
-	@Override
-	public void initialize() throws Exception 
+	private void unregisterMBean() 
 	{
-		if (loaderNames != null) 
+		if (objectName != null) 
 		{
-			for (String className : loaderNames) 
+			try 
 			{
-				try 
-				{
-					ClassLoader loader = (ClassLoader) loadClass(className).newInstance();
-					classLoaders.add(loader);
-				} 
-				catch (Exception x) 
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} 
+			catch (JMException x) 
+			{
+				if (getLogger() != null) 
 				{
-					throw new Exception("No such class loader '" + className + "' for DefaultFactoryService", x);
+					getLogger().warn("Unregistration of MXBean '" + objectName + "' failed", x);
 				}
 			}
-			loaderNames = null;
+			objectName = null;
 		}
 	}
 
@@ -574,8 +3075,37 @@ public class DefaultFactoryService extends AbstractLogEnabled
 	@Override
 	public void dispose() 
 	{
+		stopThreads();
+		if (startupList != null) 
+		{
+			writeStartupList();
+		}
+		unregisterMBean();
 		objectFactories.clear();
+		noFactories.set(0);
 		objectFactoryClasses.clear();
-		classLoaders.clear();
+		factoryMethods.clear();
+		prototypeCopies.clear();
+		scopes.clear();
+		prefetchBuffers.clear();
+		singletons.clear();
+		synchronized (threadInstanceMaps) 
+		{
+			/* Other threads keep their maps, but not the instances. */
+			for (Map<String, Object> instances : threadInstanceMaps.values()) 
+			{
+				instances.clear();
+			}
+			threadInstanceMaps.clear();
+		}
+		threadInstances.remove();
+		synchronized (classLoaderLock) 
+		{
+			classLoaders = Collections.emptyList();
+			packageRoutes.clear();
+			packageIndex = null;
+		}
+		clearCaches();
+		objectPools.clear();
 	}
 }
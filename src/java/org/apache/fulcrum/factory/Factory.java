@@ -92,6 +92,40 @@ public interface Factory<T>
     T getInstance(ClassLoader loader, Object[] params, String[] signature)
         throws FactoryException;
 
+    /**
+     * Gets an instance of a named class using a precompiled signature.
+     * The default implementation passes the type names of the signature
+     * to {@link #getInstance(Object[], String[])}.
+     *
+     * @param params an array containing the parameters of the constructor.
+     * @param signature the signature of the constructor.
+     * @return the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    default T getInstanceBySignature(Object[] params, Signature signature)
+        throws FactoryException
+    {
+        return getInstance(params, signature.getTypeNames());
+    }
+
+    /**
+     * Gets an instance of a named class using a specified class loader
+     * and a precompiled signature. The default implementation passes the
+     * type names of the signature to
+     * {@link #getInstance(ClassLoader, Object[], String[])}.
+     *
+     * @param loader the class loader.
+     * @param params an array containing the parameters of the constructor.
+     * @param signature the signature of the constructor.
+     * @return the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    default T getInstanceBySignature(ClassLoader loader, Object[] params, Signature signature)
+        throws FactoryException
+    {
+        return getInstance(loader, params, signature.getTypeNames());
+    }
+
     /**
      * Tests if this object factory supports specified class loaders.
      *
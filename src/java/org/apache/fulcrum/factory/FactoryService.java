@@ -19,6 +19,10 @@ package org.apache.fulcrum.factory;
  * under the License.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The Factory Service instantiates objects using either default
  * class loaders or a specified one. Whether specified class
@@ -114,6 +118,178 @@ public interface FactoryService
                               String[] signature)
         throws FactoryException;
 
+    /**
+     * Gets an instance of a named class using a precompiled signature.
+     * Parameters for its constructor are given as an array of objects,
+     * primitive types must be wrapped with a corresponding class.
+     * The default implementation passes the type names of the signature.
+     *
+     * @param <T> Type of the class
+     * @param className the name of the class.
+     * @param params an array containing the parameters of the constructor.
+     * @param signature the signature of the constructor.
+     * @return {@inheritDoc} the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    default <T> T getInstanceBySignature(String className,
+                                         Object[] params,
+                                         Signature signature)
+        throws FactoryException
+    {
+        return getInstance(className, params, (signature != null ? signature : Signature.EMPTY).getTypeNames());
+    }
+
+    /**
+     * Gets an instance of a named class using a specified class loader
+     * and a precompiled signature.
+     * Parameters for its constructor are given as an array of objects,
+     * primitive types must be wrapped with a corresponding class.
+     * The default implementation passes the type names of the signature.
+     *
+     * Class loaders are supported only if the isLoaderSupported
+     * method returns true. Otherwise the loader parameter is ignored.
+     *
+     * @param <T> Type of the class
+     * @param className the name of the class.
+     * @param loader the class loader.
+     * @param params an array containing the parameters of the constructor.
+     * @param signature the signature of the constructor.
+     * @return {@inheritDoc} the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    default <T> T getInstanceBySignature(String className,
+                                         ClassLoader loader,
+                                         Object[] params,
+                                         Signature signature)
+        throws FactoryException
+    {
+        return getInstance(className, loader, params,
+            (signature != null ? signature : Signature.EMPTY).getTypeNames());
+    }
+
+    /**
+     * Gets an instance of a named class with the parameter types
+     * of the constructor given as classes.
+     * Parameters for its constructor are given as an array of objects,
+     * primitive types must be wrapped with a corresponding class.
+     *
+     * @param <T> Type of the class
+     * @param className the name of the class.
+     * @param params an array containing the parameters of the constructor.
+     * @param signature an array containing the signature of the constructor.
+     * @return {@inheritDoc} the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    default <T> T getInstanceByTypes(String className,
+                                     Object[] params,
+                                     Class<?>[] signature)
+        throws FactoryException
+    {
+        return getInstanceBySignature(className, params, Signature.of(signature));
+    }
+
+    /**
+     * Gets an instance of a named class using a specified class loader,
+     * with the parameter types of the constructor given as classes.
+     * Parameters for its constructor are given as an array of objects,
+     * primitive types must be wrapped with a corresponding class.
+     *
+     * Class loaders are supported only if the isLoaderSupported
+     * method returns true. Otherwise the loader parameter is ignored.
+     *
+     * @param <T> Type of the class
+     * @param className the name of the class.
+     * @param loader the class loader.
+     * @param params an array containing the parameters of the constructor.
+     * @param signature an array containing the signature of the constructor.
+     * @return {@inheritDoc} the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    default <T> T getInstanceByTypes(String className,
+                                     ClassLoader loader,
+                                     Object[] params,
+                                     Class<?>[] signature)
+        throws FactoryException
+    {
+        return getInstanceBySignature(className, loader, params, Signature.of(signature));
+    }
+
+    /**
+     * Gets an instance of a named class asynchronously, on the executor
+     * configured for the service. Scoped instances are those of the executing
+     * thread. The default implementation instantiates in the calling thread.
+     *
+     * @param <T> Type of the class
+     * @param className the name of the class.
+     * @return {@inheritDoc} the future instance, failing with a
+     * {@link FactoryException} if instantiation fails.
+     */
+    default <T> CompletableFuture<T> getInstanceAsync(String className)
+    {
+        try
+        {
+            return CompletableFuture.completedFuture(getInstance(className));
+        }
+        catch (FactoryException x)
+        {
+            return CompletableFuture.failedFuture(x);
+        }
+    }
+
+    /**
+     * Gets an instance of a named class asynchronously, on the executor
+     * configured for the service. Parameters for its constructor are given
+     * as an array of objects, primitive types must be wrapped with a
+     * corresponding class. The default implementation instantiates in
+     * the calling thread.
+     *
+     * @param <T> Type of the class
+     * @param className the name of the class.
+     * @param params an array containing the parameters of the constructor.
+     * @param signature an array containing the signature of the constructor.
+     * @return {@inheritDoc} the future instance, failing with a
+     * {@link FactoryException} if instantiation fails.
+     */
+    default <T> CompletableFuture<T> getInstanceAsync(String className,
+                                                      Object[] params,
+                                                      String[] signature)
+    {
+        try
+        {
+            return CompletableFuture.completedFuture(getInstance(className, params, signature));
+        }
+        catch (FactoryException x)
+        {
+            return CompletableFuture.failedFuture(x);
+        }
+    }
+
+    /**
+     * Gets new instances of a named class. The factory, class and
+     * constructor are looked up once for all of them. Instances are
+     * created regardless of the scope configured for the class.
+     * The default implementation calls {@link #getInstance(String)}
+     * for each instance.
+     *
+     * @param <T> Type of the class
+     * @param className the name of the class.
+     * @param count the number of instances.
+     * @return {@inheritDoc} the instances.
+     * @throws FactoryException if instantiation fails.
+     */
+    default <T> List<T> getInstances(String className,
+                                     int count)
+        throws FactoryException
+    {
+        List<T> instances = new ArrayList<T>(count);
+        for (int i = 0; i < count; i++)
+        {
+            T instance = getInstance(className);
+            instances.add(instance);
+        }
+        return instances;
+    }
+
     /**
      * Tests if specified class loaders are supported for a named class.
      *
@@ -141,4 +317,182 @@ public interface FactoryService
             Object params[],
             String signature[])
             throws ClassNotFoundException;
+
+    /**
+     * Gets a reusable handle for instantiating a named class.
+     * The factory and class lookups are done once, when the handle
+     * is created. The default implementation returns a handle calling
+     * {@link #getInstance(String)}.
+     *
+     * @param <T> Type of the class
+     * @param className the name of the class.
+     * @return {@inheritDoc} the handle.
+     * @throws FactoryException if the class or its factory cannot be resolved.
+     */
+    default <T> InstanceSupplier<T> supplierFor(final String className)
+        throws FactoryException
+    {
+        return new InstanceSupplier<T>()
+        {
+            @Override
+            public T getInstance() throws FactoryException
+            {
+                return FactoryService.this.getInstance(className);
+            }
+
+            @Override
+            public T getInstance(Object[] params) throws FactoryException
+            {
+                if (params != null && params.length > 0)
+                {
+                    throw new FactoryException("Instantiation failed for " + className
+                        + ": no parameters expected");
+                }
+                return getInstance();
+            }
+        };
+    }
+
+    /**
+     * Gets a reusable handle for instantiating a class through
+     * the constructor with the given signature. The constructor
+     * is resolved once, when the handle is created. The default
+     * implementation returns a handle calling {@link #getInstance(Class)}
+     * or {@link #getInstance(String, Object[], String[])}.
+     *
+     * @param <T> Type of the class
+     * @param clazz the class.
+     * @param signature the signature of the constructor, empty for the no-arg constructor.
+     * @return {@inheritDoc} the handle.
+     * @throws FactoryException if the constructor cannot be resolved.
+     */
+    default <T> InstanceSupplier<T> supplierFor(final Class<T> clazz,
+                                                String... signature)
+        throws FactoryException
+    {
+        final String[] types = signature != null ? signature.clone() : new String[0];
+        return new InstanceSupplier<T>()
+        {
+            @Override
+            public T getInstance() throws FactoryException
+            {
+                return getInstance(new Object[0]);
+            }
+
+            @Override
+            public T getInstance(Object[] params) throws FactoryException
+            {
+                return types.length == 0 && (params == null || params.length == 0)
+                    ? FactoryService.this.getInstance(clazz)
+                    : FactoryService.this.<T>getInstance(clazz.getName(), params, types);
+            }
+        };
+    }
+
+    /**
+     * Borrows an instance of a named class from its pool. If no pool
+     * is configured for the class or the pool is empty, a new instance
+     * is created as by {@link #getInstance(String)}. The default
+     * implementation does not pool instances.
+     *
+     * @param <T> Type of the class
+     * @param className the name of the class.
+     * @return {@inheritDoc} the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    default <T> T borrowInstance(String className)
+        throws FactoryException
+    {
+        return getInstance(className);
+    }
+
+    /**
+     * Returns a borrowed instance of a named class to its pool.
+     * Instances implementing {@link Resettable} are reset first,
+     * instances not of the named class are discarded.
+     *
+     * @param className the name of the class the instance was borrowed for.
+     * @param instance the instance.
+     * @return true if the instance was pooled, false if it was discarded.
+     */
+    default boolean returnInstance(String className,
+                                   Object instance)
+    {
+        return false;
+    }
+
+    /**
+     * Registers a prototype for a named class. Instances of the class
+     * requested without parameters are then copies of the prototype,
+     * made as configured for the class, by default by a public
+     * <code>clone()</code> method if the prototype is cloneable,
+     * by a public copy constructor or by serialization, whichever
+     * is available first.
+     *
+     * @param className the name of the class.
+     * @param prototype the prototype, null to remove a registered prototype.
+     * @throws FactoryException if the prototype cannot be copied or another
+     *         factory is configured for the class.
+     * @throws UnsupportedOperationException if the service does not support prototypes.
+     */
+    default void setPrototype(String className,
+                              Object prototype)
+        throws FactoryException
+    {
+        throw new UnsupportedOperationException("Prototypes are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Opens a request scope for the calling thread. Until the scope is
+     * closed, instances of classes configured with the
+     * {@link InstanceScope#REQUEST} scope are shared by the requests
+     * of the thread.
+     *
+     * @return {@inheritDoc} the scope, to be closed when the request is done.
+     * @throws UnsupportedOperationException if the service does not support request scopes.
+     */
+    default RequestScope openRequestScope()
+    {
+        throw new UnsupportedOperationException("Request scopes are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Tests if a named class can be instantiated, without throwing an
+     * exception if it cannot. Probing for optional classes should use
+     * this method rather than catching the {@link FactoryException} of
+     * {@link #getInstance(String)}, which records the stack trace on
+     * every failure. The default implementation looks the class up in
+     * the class loader of the service.
+     *
+     * @param className the name of the class.
+     * @return {@inheritDoc} true if the class has a factory or can be loaded.
+     */
+    default boolean isAvailable(String className)
+    {
+        if (className == null)
+        {
+            return false;
+        }
+        try
+        {
+            Class.forName(className, false, getClass().getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError x)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Gets a snapshot of the statistics collected by the service,
+     * per class name and phase of instantiation.
+     *
+     * @return {@inheritDoc} the statistics, empty if collecting metrics is disabled
+     * or not supported.
+     */
+    default FactoryStatistics getStatistics()
+    {
+        return FactoryStatistics.EMPTY;
+    }
 }
@@ -0,0 +1,194 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The management interface of the Factory Service, registered
+ * as <code>org.apache.fulcrum.factory:type=FactoryService,name=...</code>
+ * if enabled in the component configuration.
+ *
+ * @version $Id$
+ */
+public interface FactoryServiceMXBean
+{
+    /**
+     * Gets the configured factory class names.
+     *
+     * @return the factory class names keyed by production class name.
+     */
+    Map<String, String> getObjectFactoryClasses();
+
+    /**
+     * Gets the factories created so far.
+     *
+     * @return the factory class names keyed by production class name.
+     */
+    Map<String, String> getFactories();
+
+    /**
+     * Gets the additional class loaders in search order.
+     *
+     * @return the descriptions of the class loaders.
+     */
+    List<String> getClassLoaders();
+
+    /**
+     * Gets the number of additional class loaders which failed to load
+     * a class, before another one found it or the lookup gave up.
+     *
+     * @return the number of failed attempts.
+     */
+    long getFailedLoaderAttempts();
+
+    /**
+     * Gets the number of cached resolved classes.
+     *
+     * @return the size, or -1 if the cache is disabled.
+     */
+    int getClassCacheSize();
+
+    /**
+     * Gets the number of lookups answered by the resolved class cache.
+     *
+     * @return the number of hits.
+     */
+    long getClassCacheHits();
+
+    /**
+     * Gets the number of lookups not answered by the resolved class cache.
+     *
+     * @return the number of misses.
+     */
+    long getClassCacheMisses();
+
+    /**
+     * Gets the hit rate of the resolved class cache.
+     *
+     * @return the hit rate between 0 and 1.
+     */
+    double getClassCacheHitRate();
+
+    /**
+     * Gets the number of cached missing class names.
+     *
+     * @return the size, or -1 if the cache is disabled.
+     */
+    int getMissingClassCacheSize();
+
+    /**
+     * Gets the number of lookups answered by the cache of missing classes.
+     *
+     * @return the number of hits.
+     */
+    long getMissingClassCacheHits();
+
+    /**
+     * Gets the number of idle instances per pooled class.
+     *
+     * @return the pool sizes keyed by class name.
+     */
+    Map<String, Integer> getObjectPoolSizes();
+
+    /**
+     * Gets the number of borrows served from the pool per pooled class.
+     *
+     * @return the hit counts keyed by class name.
+     */
+    Map<String, Long> getObjectPoolHits();
+
+    /**
+     * Gets the number of borrows that found the pool empty per pooled class.
+     *
+     * @return the miss counts keyed by class name.
+     */
+    Map<String, Long> getObjectPoolMisses();
+
+    /**
+     * Gets the number of returned instances discarded per pooled class.
+     *
+     * @return the discard counts keyed by class name.
+     */
+    Map<String, Long> getObjectPoolDiscards();
+
+    /**
+     * Gets the occupancy and hit counts of the buffer per prefetched class.
+     *
+     * @return the buffer descriptions keyed by class name.
+     */
+    Map<String, String> getPrefetchBuffers();
+
+    /**
+     * Gets the number of classes listed by the top classes attributes.
+     *
+     * @return the number of classes.
+     */
+    int getTopClasses();
+
+    /**
+     * Sets the number of classes listed by the top classes attributes.
+     *
+     * @param topClasses the number of classes.
+     */
+    void setTopClasses(int topClasses);
+
+    /**
+     * Gets the classes with the most instantiations, if metrics are enabled.
+     *
+     * @return the class names with their statistics.
+     */
+    List<String> getTopClassesByCount();
+
+    /**
+     * Gets the classes with the most total time spent in all phases,
+     * if metrics are enabled.
+     *
+     * @return the class names with their statistics.
+     */
+    List<String> getTopClassesByTime();
+
+    /**
+     * Gets the outcome of the warm up done at initialization.
+     *
+     * @return the summary of the warm up, or null if none was configured.
+     */
+    String getWarmUpReport();
+
+    /**
+     * Clears the class caches and the object pools.
+     */
+    void clearCaches();
+
+    /**
+     * Resets the collected metrics.
+     */
+    void resetStatistics();
+
+    /**
+     * Resolves classes and their factories ahead of their first
+     * instantiation.
+     *
+     * @param classNames the class names, separated by commas or white space.
+     * @return the class names which could not be resolved, with the reason.
+     */
+    List<String> warmUp(String classNames);
+}
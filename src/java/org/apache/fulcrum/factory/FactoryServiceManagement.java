@@ -0,0 +1,310 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+import org.apache.fulcrum.factory.FactoryStatistics.ClassStatistics;
+import org.apache.fulcrum.factory.FactoryStatistics.Phase;
+import org.apache.fulcrum.factory.utils.ClassCache;
+import org.apache.fulcrum.factory.utils.MissingClassCache;
+import org.apache.fulcrum.factory.utils.ObjectPool;
+import org.apache.fulcrum.factory.utils.PrefetchBuffer;
+
+/**
+ * The MXBean of a {@link DefaultFactoryService}.
+ *
+ * @version $Id$
+ */
+class FactoryServiceManagement implements FactoryServiceMXBean
+{
+    /** the default number of top classes */
+    static final int DEFAULT_TOP_CLASSES = 10;
+
+    /** the managed service */
+    private final DefaultFactoryService service;
+
+    /** the number of top classes */
+    private volatile int topClasses = DEFAULT_TOP_CLASSES;
+
+    /**
+     * @param service the managed service
+     */
+    FactoryServiceManagement(DefaultFactoryService service)
+    {
+        this.service = service;
+    }
+
+    @Override
+    public Map<String, String> getObjectFactoryClasses()
+    {
+        return new TreeMap<String, String>(service.getObjectFactoryClasses());
+    }
+
+    @Override
+    public Map<String, String> getFactories()
+    {
+        Map<String, String> factories = new TreeMap<String, String>();
+        for (Map.Entry<String, Factory<?>> entry : service.getFactories().entrySet())
+        {
+            factories.put(entry.getKey(), entry.getValue().getClass().getName());
+        }
+        return factories;
+    }
+
+    @Override
+    public List<String> getClassLoaders()
+    {
+        List<String> loaders = new ArrayList<String>();
+        for (ClassLoader loader : service.getClassLoaders())
+        {
+            loaders.add(String.valueOf(loader));
+        }
+        return loaders;
+    }
+
+    @Override
+    public long getFailedLoaderAttempts()
+    {
+        return service.getFailedLoaderAttempts();
+    }
+
+    @Override
+    public int getClassCacheSize()
+    {
+        ClassCache cache = service.getClassCache();
+        return cache != null ? cache.size() : -1;
+    }
+
+    @Override
+    public long getClassCacheHits()
+    {
+        ClassCache cache = service.getClassCache();
+        return cache != null ? cache.getHits() : 0L;
+    }
+
+    @Override
+    public long getClassCacheMisses()
+    {
+        ClassCache cache = service.getClassCache();
+        return cache != null ? cache.getMisses() : 0L;
+    }
+
+    @Override
+    public double getClassCacheHitRate()
+    {
+        ClassCache cache = service.getClassCache();
+        if (cache == null)
+        {
+            return 0.0;
+        }
+        long hits = cache.getHits();
+        long total = hits + cache.getMisses();
+        return total > 0 ? (double) hits / total : 0.0;
+    }
+
+    @Override
+    public int getMissingClassCacheSize()
+    {
+        MissingClassCache cache = service.getMissingClassCache();
+        return cache != null ? cache.size() : -1;
+    }
+
+    @Override
+    public long getMissingClassCacheHits()
+    {
+        MissingClassCache cache = service.getMissingClassCache();
+        return cache != null ? cache.getHits() : 0L;
+    }
+
+    @Override
+    public Map<String, Integer> getObjectPoolSizes()
+    {
+        Map<String, Integer> sizes = new TreeMap<String, Integer>();
+        for (Map.Entry<String, ObjectPool<?>> entry : service.getObjectPools().entrySet())
+        {
+            sizes.put(entry.getKey(), Integer.valueOf(entry.getValue().size()));
+        }
+        return sizes;
+    }
+
+    @Override
+    public Map<String, Long> getObjectPoolHits()
+    {
+        return getObjectPoolCounts(ObjectPool::getHits);
+    }
+
+    @Override
+    public Map<String, Long> getObjectPoolMisses()
+    {
+        return getObjectPoolCounts(ObjectPool::getMisses);
+    }
+
+    @Override
+    public Map<String, Long> getObjectPoolDiscards()
+    {
+        return getObjectPoolCounts(ObjectPool::getDiscards);
+    }
+
+    @Override
+    public Map<String, String> getPrefetchBuffers()
+    {
+        Map<String, String> buffers = new TreeMap<String, String>();
+        for (Map.Entry<String, PrefetchBuffer<?>> entry : service.getPrefetchBuffers().entrySet())
+        {
+            buffers.put(entry.getKey(), entry.getValue().toString());
+        }
+        return buffers;
+    }
+
+    @Override
+    public int getTopClasses()
+    {
+        return topClasses;
+    }
+
+    @Override
+    public void setTopClasses(int topClasses)
+    {
+        if (topClasses < 0)
+        {
+            throw new IllegalArgumentException("Negative number of top classes: " + topClasses);
+        }
+        this.topClasses = topClasses;
+    }
+
+    @Override
+    public List<String> getTopClassesByCount()
+    {
+        return getTopClasses(ClassStatistics::getInstantiations);
+    }
+
+    @Override
+    public List<String> getTopClassesByTime()
+    {
+        return getTopClasses(FactoryServiceManagement::getTotalNanos);
+    }
+
+    @Override
+    public String getWarmUpReport()
+    {
+        WarmUpReport report = service.getWarmUpReport();
+        return report != null ? report.toString() : null;
+    }
+
+    @Override
+    public void clearCaches()
+    {
+        service.clearCaches();
+    }
+
+    @Override
+    public void resetStatistics()
+    {
+        service.resetStatistics();
+    }
+
+    @Override
+    public List<String> warmUp(String classNames)
+    {
+        List<String> failures = new ArrayList<String>();
+        if (classNames != null)
+        {
+            for (String className : classNames.split("[,\\s]+"))
+            {
+                if (className.isEmpty())
+                {
+                    continue;
+                }
+                try
+                {
+                    service.warmUp(className, null);
+                }
+                catch (FactoryException x)
+                {
+                    Throwable cause = x.getCause() != null ? x.getCause() : x;
+                    failures.add(className + ": " + cause);
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Lists the classes with the highest value of a statistic.
+     *
+     * @param value the statistic
+     * @return the class names with their statistics, highest first
+     */
+    private List<String> getTopClasses(ToLongFunction<ClassStatistics> value)
+    {
+        List<Map.Entry<String, ClassStatistics>> entries =
+            new ArrayList<Map.Entry<String, ClassStatistics>>(service.getStatistics().getClasses().entrySet());
+        entries.sort(Comparator.comparingLong(
+            (Map.Entry<String, ClassStatistics> entry) -> value.applyAsLong(entry.getValue())).reversed());
+
+        int limit = Math.min(topClasses, entries.size());
+        List<String> top = new ArrayList<String>(limit);
+        for (Map.Entry<String, ClassStatistics> entry : entries.subList(0, limit))
+        {
+            ClassStatistics statistics = entry.getValue();
+            top.add(entry.getKey() + ": " + statistics.getInstantiations() + " instances, "
+                + getTotalNanos(statistics) / 1000L + " us");
+        }
+        return top;
+    }
+
+    /**
+     * Collects a counter of each object pool.
+     *
+     * @param value the counter
+     * @return the counts keyed by class name
+     */
+    private Map<String, Long> getObjectPoolCounts(ToLongFunction<ObjectPool<?>> value)
+    {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, ObjectPool<?>> entry : service.getObjectPools().entrySet())
+        {
+            counts.put(entry.getKey(), Long.valueOf(value.applyAsLong(entry.getValue())));
+        }
+        return counts;
+    }
+
+    /**
+     * Sums the time spent in all phases.
+     *
+     * @param statistics the statistics of a class
+     * @return the total time in nanoseconds
+     */
+    private static long getTotalNanos(ClassStatistics statistics)
+    {
+        long total = 0L;
+        for (Phase phase : Phase.values())
+        {
+            total += statistics.getTiming(phase).getTotalNanos();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,247 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of the statistics collected by the Factory Service,
+ * per class name and per phase of instantiation.
+ *
+ * <p>Timings are kept in histograms with power-of-two buckets of
+ * nanoseconds, so percentiles are upper bounds accurate to a factor
+ * of two.</p>
+ *
+ * @version $Id$
+ */
+public class FactoryStatistics
+{
+    /**
+     * The phases of instantiation that are timed.
+     */
+    public enum Phase
+    {
+        /** Resolution of a class name to a class */
+        RESOLVE,
+        /** Lookup of a customized factory */
+        FACTORY_LOOKUP,
+        /** Construction by a constructor or a customized factory */
+        CONSTRUCT,
+        /** Switching a parameter into the context of a different class loader */
+        SWITCH_CONTEXT
+    }
+
+    /**
+     * An empty snapshot.
+     */
+    public static final FactoryStatistics EMPTY =
+        new FactoryStatistics(Collections.<String, ClassStatistics>emptyMap());
+
+    /**
+     * Statistics per class name.
+     */
+    private final Map<String, ClassStatistics> classes;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param classes statistics per class name.
+     */
+    public FactoryStatistics(Map<String, ClassStatistics> classes)
+    {
+        this.classes = Collections.unmodifiableMap(new TreeMap<String, ClassStatistics>(classes));
+    }
+
+    /**
+     * Gets the statistics per class name.
+     *
+     * @return an unmodifiable map sorted by class name.
+     */
+    public Map<String, ClassStatistics> getClasses()
+    {
+        return classes;
+    }
+
+    /**
+     * Gets the statistics of a class name.
+     *
+     * @param className the class name.
+     * @return the statistics, or null if nothing was recorded for the class.
+     */
+    public ClassStatistics getClass(String className)
+    {
+        return classes.get(className);
+    }
+
+    /**
+     * The statistics of a class name.
+     */
+    public static class ClassStatistics
+    {
+        /**
+         * Timings per phase.
+         */
+        private final Map<Phase, Timing> timings;
+
+        /**
+         * Creates the statistics of a class name.
+         *
+         * @param timings the timings per phase.
+         */
+        public ClassStatistics(Map<Phase, Timing> timings)
+        {
+            this.timings = Collections.unmodifiableMap(new EnumMap<Phase, Timing>(timings));
+        }
+
+        /**
+         * Gets the number of instances created.
+         *
+         * @return the count of the construct phase.
+         */
+        public long getInstantiations()
+        {
+            return getTiming(Phase.CONSTRUCT).getCount();
+        }
+
+        /**
+         * Gets the timing of a phase.
+         *
+         * @param phase the phase.
+         * @return the timing, empty if the phase was not recorded.
+         */
+        public Timing getTiming(Phase phase)
+        {
+            Timing timing = timings.get(phase);
+            return timing != null ? timing : Timing.EMPTY;
+        }
+
+        @Override
+        public String toString()
+        {
+            return timings.toString();
+        }
+    }
+
+    /**
+     * The timing of a phase.
+     */
+    public static class Timing
+    {
+        /**
+         * An empty timing.
+         */
+        public static final Timing EMPTY = new Timing(0, 0, 0, new long[0]);
+
+        /** the number of recorded events */
+        private final long count;
+
+        /** the total time in nanoseconds */
+        private final long totalNanos;
+
+        /** the maximum time in nanoseconds */
+        private final long maxNanos;
+
+        /** event counts per power-of-two bucket */
+        private final long[] buckets;
+
+        /**
+         * Creates a timing.
+         *
+         * @param count the number of recorded events.
+         * @param totalNanos the total time in nanoseconds.
+         * @param maxNanos the maximum time in nanoseconds.
+         * @param buckets the event counts per bucket, bucket i holding times below 2^i ns.
+         */
+        public Timing(long count, long totalNanos, long maxNanos, long[] buckets)
+        {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets.clone();
+        }
+
+        /**
+         * @return the number of recorded events.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return the total time in nanoseconds.
+         */
+        public long getTotalNanos()
+        {
+            return totalNanos;
+        }
+
+        /**
+         * @return the maximum time in nanoseconds.
+         */
+        public long getMaxNanos()
+        {
+            return maxNanos;
+        }
+
+        /**
+         * @return the mean time in nanoseconds, 0 if nothing was recorded.
+         */
+        public long getMeanNanos()
+        {
+            return count > 0 ? totalNanos / count : 0;
+        }
+
+        /**
+         * Gets an upper bound of a percentile of the recorded times.
+         *
+         * @param percentile the percentile between 0 and 100.
+         * @return the upper bound in nanoseconds, 0 if nothing was recorded.
+         */
+        public long getPercentileNanos(double percentile)
+        {
+            long total = 0;
+            for (long bucket : buckets)
+            {
+                total += bucket;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++)
+            {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0)
+                {
+                    return Math.min(1L << i, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "count=" + count + ", mean=" + getMeanNanos() + "ns, max=" + maxNanos + "ns";
+        }
+    }
+}
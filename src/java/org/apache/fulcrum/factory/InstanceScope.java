@@ -0,0 +1,55 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Locale;
+
+/**
+ * The scopes in which instances of a named class are shared by
+ * the Factory Service.
+ *
+ * @version $Id$
+ */
+public enum InstanceScope
+{
+    /** a new instance is created for every request, the default */
+    PROTOTYPE,
+
+    /** one instance is shared by all requests */
+    SINGLETON,
+
+    /** one instance is shared by the requests of a thread */
+    THREAD,
+
+    /** one instance is shared by the requests within an open {@link RequestScope} */
+    REQUEST;
+
+    /**
+     * Gets the scope of a configured name, ignoring case.
+     *
+     * @param name the name of the scope.
+     * @return the scope.
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+    public static InstanceScope parse(String name)
+    {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,59 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * A pre-resolved handle for instantiating a class, obtained from
+ * the Factory Service. The factory, class and constructor lookups
+ * are done when the handle is created, so callers can keep it and
+ * pay only for the instantiation afterwards.
+ *
+ * <p>Implementations are thread-safe.</p>
+ *
+ * @param <T> the type of the instances
+ *
+ * @version $Id$
+ */
+public interface InstanceSupplier<T>
+{
+    /**
+     * Gets an instance. Handles of classes shared in a singleton, thread
+     * or request scope return the shared instance of the scope, others
+     * a new instance.
+     *
+     * @return the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    T getInstance()
+        throws FactoryException;
+
+    /**
+     * Gets a new instance, regardless of the scope of the class.
+     * The parameters must match the signature the handle was
+     * obtained for, primitive types must be wrapped with a
+     * corresponding class.
+     *
+     * @param params an array containing the parameters of the constructor.
+     * @return the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    T getInstance(Object[] params)
+        throws FactoryException;
+}
@@ -0,0 +1,361 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Locale;
+
+import org.apache.fulcrum.factory.utils.ConstructorResolver;
+import org.apache.fulcrum.factory.utils.ObjectInputStreamForContext;
+
+/**
+ * A factory returning copies of a prototype instance of its production
+ * class. Objects that are expensive to set up but cheap to copy are built
+ * once, either by the no-arg constructor on first use or by registering
+ * a configured instance with {@link FactoryService#setPrototype(String, Object)},
+ * and every instance is then copied from the prototype.
+ *
+ * <p>Copies are made by a public <code>clone()</code> method, by the most
+ * specific public constructor taking the prototype, or deeply by serializing the prototype.
+ * Serialization is done here rather than by the context switch strategy of the Factory
+ * Service, which may share immutable or all objects instead. Unless configured, the first
+ * of these available for the prototype is used, skipping <code>clone()</code> for
+ * prototypes which are not cloneable and serialization for those which are not
+ * serializable. Instances requested with parameters are constructed as usual.
+ * Specified class loaders are not supported.</p>
+ *
+ * @param <T> the type of the production class
+ *
+ * @version $Id$
+ */
+final class PrototypeFactory<T> implements Factory<T>
+{
+    /**
+     * The copy modes tried in turn for cloneable prototypes.
+     */
+    private static final Copy[] CLONEABLE = { Copy.CLONE, Copy.CONSTRUCTOR, Copy.SERIALIZATION };
+
+    /**
+     * The copy modes tried in turn for other prototypes.
+     */
+    private static final Copy[] NOT_CLONEABLE = { Copy.CONSTRUCTOR, Copy.SERIALIZATION };
+
+    /**
+     * The ways of copying the prototype.
+     */
+    enum Copy
+    {
+        /** a public clone() method */
+        CLONE,
+        /** a public copy constructor */
+        CONSTRUCTOR,
+        /** serialization of the prototype */
+        SERIALIZATION;
+
+        /**
+         * Parses a configured copy mode.
+         *
+         * @param name the name of the mode, null or empty to select it by the prototype
+         * @return the mode, or null if selected by the prototype
+         * @throws IllegalArgumentException if the name is unknown
+         */
+        static Copy parse(String name)
+        {
+            return name == null || name.trim().isEmpty() ? null : valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * The service creating the prototype and instances with parameters.
+     */
+    private final DefaultFactoryService service;
+
+    /**
+     * The configured copy mode, null to select it by the prototype.
+     */
+    private final Copy copy;
+
+    /**
+     * The prototype, null until initialized.
+     */
+    private T prototype;
+
+    /**
+     * The production class, null until initialized.
+     */
+    private Class<T> clazz;
+
+    /**
+     * The copy mode in use, null until initialized.
+     */
+    private Copy mode;
+
+    /**
+     * The handle of type (Object)Object copying the prototype, null for serialization.
+     */
+    private MethodHandle copier;
+
+    /**
+     * Constructor
+     *
+     * @param service the Factory Service
+     * @param copy the copy mode, null to select it by the prototype
+     * @param prototype the prototype, null to create it by the no-arg constructor
+     */
+    PrototypeFactory(DefaultFactoryService service, Copy copy, T prototype)
+    {
+        this.service = service;
+        this.copy = copy;
+        this.prototype = prototype;
+    }
+
+    /**
+     * Loads the production class, creates the prototype if not given
+     * and resolves the copy method.
+     *
+     * @param className the name of the production class
+     * @throws FactoryException if the prototype cannot be created or copied.
+     */
+    @Override
+    public void init(String className) throws FactoryException
+    {
+        try
+        {
+            clazz = service.loadClass(className);
+        }
+        catch (ClassNotFoundException x)
+        {
+            throw new FactoryException("Instantiation failed for class " + className, x);
+        }
+        if (prototype == null)
+        {
+            prototype = service.getInstance(clazz);
+        }
+        else if (!clazz.isInstance(prototype))
+        {
+            throw new FactoryException("Prototype " + prototype.getClass().getName()
+                + " is not an instance of " + className);
+        }
+
+        if (copy != null)
+        {
+            try
+            {
+                copier = getCopier(copy);
+                mode = copy;
+            }
+            catch (NoSuchMethodException | IllegalAccessException x)
+            {
+                throw new FactoryException("Prototype of " + className + " cannot be copied by "
+                    + copy.name().toLowerCase(Locale.ROOT), x);
+            }
+            return;
+        }
+
+        ReflectiveOperationException failure = null;
+        for (Copy candidate : prototype instanceof Cloneable ? CLONEABLE : NOT_CLONEABLE)
+        {
+            if (candidate == Copy.SERIALIZATION && !(prototype instanceof Serializable))
+            {
+                break;
+            }
+            try
+            {
+                copier = getCopier(candidate);
+                mode = candidate;
+                return;
+            }
+            catch (NoSuchMethodException | IllegalAccessException x)
+            {
+                if (failure == null)
+                {
+                    failure = x;
+                }
+                else
+                {
+                    failure.addSuppressed(x);
+                }
+            }
+        }
+        throw new FactoryException("Prototype of " + className + " cannot be copied", failure);
+    }
+
+    /**
+     * Resolves the handle copying the prototype in a mode.
+     *
+     * @param mode the copy mode
+     * @return the handle of type (Object)Object, null for serialization
+     * @throws NoSuchMethodException if there is no public copy method.
+     * @throws IllegalAccessException if the copy method is not accessible.
+     */
+    private MethodHandle getCopier(Copy mode) throws NoSuchMethodException, IllegalAccessException
+    {
+        Class<?> type = prototype.getClass();
+        switch (mode)
+        {
+            case CLONE:
+                Method clone = type.getMethod("clone");
+                return MethodHandles.publicLookup().unreflect(clone)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            case CONSTRUCTOR:
+                return MethodHandles.publicLookup()
+                    .unreflectConstructor(ConstructorResolver.resolve(type, new Class<?>[] { type }))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Gets the prototype.
+     *
+     * @return the prototype.
+     */
+    T getPrototype()
+    {
+        return prototype;
+    }
+
+    /**
+     * Gets a copy of the prototype.
+     *
+     * @return the copy.
+     * @throws FactoryException if copying fails.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T getInstance() throws FactoryException
+    {
+        if (copier == null)
+        {
+            return serialize();
+        }
+        try
+        {
+            return (T) (Object) copier.invokeExact((Object) prototype);
+        }
+        catch (Exception | Error x)
+        {
+            throw new FactoryException("Copying the prototype of " + clazz.getName() + " failed", x);
+        }
+        catch (Throwable t)
+        {
+            throw new FactoryException("Copying the prototype of " + clazz.getName() + " failed",
+                new UndeclaredThrowableException(t));
+        }
+    }
+
+    /**
+     * Gets a deep copy of the prototype by serializing it.
+     *
+     * @return the copy.
+     * @throws FactoryException if the prototype cannot be serialized or deserialized.
+     */
+    private T serialize() throws FactoryException
+    {
+        try
+        {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bout))
+            {
+                out.writeObject(prototype);
+            }
+            ByteArrayInputStream bin = new ByteArrayInputStream(bout.toByteArray());
+            try (ObjectInputStreamForContext in = new ObjectInputStreamForContext(bin, clazz.getClassLoader()))
+            {
+                return clazz.cast(in.readObject());
+            }
+        }
+        catch (Exception x)
+        {
+            throw new FactoryException("Copying the prototype of " + clazz.getName() + " failed", x);
+        }
+    }
+
+    @Override
+    public T getInstance(ClassLoader loader) throws FactoryException
+    {
+        return getInstance();
+    }
+
+    /**
+     * Gets a copy of the prototype if no parameters are given,
+     * otherwise a new instance constructed with the parameters.
+     *
+     * @param params an array containing the parameters of the constructor.
+     * @param signature an array containing the signature of the constructor.
+     * @return the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    @Override
+    public T getInstance(Object[] params, String[] signature) throws FactoryException
+    {
+        if (params == null || params.length == 0)
+        {
+            return getInstance();
+        }
+        return service.getInstance(clazz, params, signature);
+    }
+
+    @Override
+    public T getInstance(ClassLoader loader, Object[] params, String[] signature) throws FactoryException
+    {
+        return getInstance(params, signature);
+    }
+
+    /**
+     * Gets a copy of the prototype if no parameters are given,
+     * otherwise a new instance constructed with the parameters.
+     *
+     * @param params an array containing the parameters of the constructor.
+     * @param signature the signature of the constructor.
+     * @return the instance.
+     * @throws FactoryException if instantiation fails.
+     */
+    @Override
+    public T getInstanceBySignature(Object[] params, Signature signature) throws FactoryException
+    {
+        if (params == null || params.length == 0)
+        {
+            return getInstance();
+        }
+        return service.getInstanceBySignature(clazz, params, signature);
+    }
+
+    @Override
+    public T getInstanceBySignature(ClassLoader loader, Object[] params, Signature signature) throws FactoryException
+    {
+        return getInstanceBySignature(params, signature);
+    }
+
+    @Override
+    public boolean isLoaderSupported()
+    {
+        return false;
+    }
+}
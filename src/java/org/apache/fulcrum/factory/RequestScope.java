@@ -0,0 +1,160 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A scope sharing instances of classes configured with the
+ * {@link InstanceScope#REQUEST} scope, opened by a thread with
+ * {@link FactoryService#openRequestScope()} and closed when the
+ * request is done:
+ *
+ * <pre>
+ * try (RequestScope scope = factoryService.openRequestScope())
+ * {
+ *     ...
+ * }
+ * </pre>
+ *
+ * <p>A scope is bound to the thread that opened it. Scopes may be nested,
+ * closing a scope makes the enclosing scope current again. Closing an
+ * enclosing scope first closes the scopes nested in it as well.</p>
+ *
+ * @version $Id$
+ */
+public final class RequestScope implements AutoCloseable
+{
+    /**
+     * The current scope per thread of the service.
+     */
+    private final ThreadLocal<RequestScope> current;
+
+    /**
+     * The enclosing scope, or null.
+     */
+    private final RequestScope parent;
+
+    /**
+     * The shared instances by class name.
+     */
+    private final Map<String, Object> instances = new HashMap<String, Object>();
+
+    /**
+     * Whether the scope is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Opens a scope and makes it current for the calling thread.
+     *
+     * @param current the current scope per thread
+     */
+    RequestScope(ThreadLocal<RequestScope> current)
+    {
+        this.current = current;
+        this.parent = current.get();
+        current.set(this);
+    }
+
+    /**
+     * Tests if the scope is open.
+     *
+     * @return true until the scope is closed.
+     */
+    public boolean isOpen()
+    {
+        return !closed;
+    }
+
+    /**
+     * Gets the shared instance of a class.
+     *
+     * @param className the name of the class.
+     * @return the instance, or null if not created yet.
+     */
+    Object get(String className)
+    {
+        return instances.get(className);
+    }
+
+    /**
+     * Shares an instance of a class.
+     *
+     * @param className the name of the class.
+     * @param instance the instance.
+     */
+    void put(String className, Object instance)
+    {
+        instances.put(className, instance);
+    }
+
+    /**
+     * Closes the scope and releases its instances. Scopes nested in it
+     * and still open on the calling thread are closed too, and the
+     * enclosing scope becomes current again.
+     */
+    @Override
+    public void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+        release();
+
+        RequestScope top = current.get();
+        for (RequestScope scope = top; scope != null; scope = scope.parent)
+        {
+            if (scope == this)
+            {
+                /* Closed out of order, unwind the nested scopes. */
+                for (RequestScope nested = top; nested != this; nested = nested.parent)
+                {
+                    nested.release();
+                }
+                RequestScope open = parent;
+                while (open != null && open.closed)
+                {
+                    open = open.parent;
+                }
+                if (open != null)
+                {
+                    current.set(open);
+                }
+                else
+                {
+                    current.remove();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Marks the scope as closed and releases its instances.
+     */
+    private void release()
+    {
+        closed = true;
+        instances.clear();
+    }
+}
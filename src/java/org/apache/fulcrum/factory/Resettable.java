@@ -0,0 +1,38 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Resettable is an optional interface for objects pooled by the
+ * Factory Service. The reset method is called when an instance is
+ * returned to its pool, so that the next borrower gets it in a
+ * clean state.
+ *
+ * @version $Id$
+ */
+public interface Resettable
+{
+    /**
+     * Resets the state of the object before it is pooled.
+     * If this method throws a runtime exception, the object
+     * is discarded instead of pooled.
+     */
+    void reset();
+}
@@ -0,0 +1,170 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * A precompiled constructor signature. Callers that know the parameter
+ * types of a constructor can create a signature once and keep it,
+ * so the Factory Service does not have to resolve type names on
+ * every instantiation.
+ *
+ * <p>The types must be visible to the class loader of the
+ * instantiated class. Signatures are immutable and thread-safe.</p>
+ *
+ * @version $Id$
+ */
+public final class Signature
+{
+    /**
+     * The signature of the no-arg constructor.
+     */
+    public static final Signature EMPTY = new Signature(new Class<?>[0]);
+
+    /**
+     * The parameter types.
+     */
+    private final Class<?>[] types;
+
+    /**
+     * The parameter type names.
+     */
+    private final String[] typeNames;
+
+    /**
+     * The hash code.
+     */
+    private final int hash;
+
+    /**
+     * Constructor
+     *
+     * @param types the parameter types, not shared.
+     */
+    private Signature(Class<?>[] types)
+    {
+        this.types = types;
+        this.typeNames = new String[types.length];
+        for (int i = 0; i < types.length; i++)
+        {
+            typeNames[i] = types[i].getName();
+        }
+        this.hash = Arrays.hashCode(types);
+    }
+
+    /**
+     * Gets the signature of the given parameter types.
+     *
+     * @param types the parameter types, null or empty for the no-arg constructor.
+     * @return the signature.
+     * @throws IllegalArgumentException if a type is null.
+     */
+    public static Signature of(Class<?>... types)
+    {
+        if (types == null || types.length == 0)
+        {
+            return EMPTY;
+        }
+        for (Class<?> type : types)
+        {
+            if (type == null)
+            {
+                throw new IllegalArgumentException("Null type in signature " + Arrays.toString(types));
+            }
+        }
+        return new Signature(types.clone());
+    }
+
+    /**
+     * Gets the number of parameters.
+     *
+     * @return the number of parameters.
+     */
+    public int size()
+    {
+        return types.length;
+    }
+
+    /**
+     * Gets a parameter type.
+     *
+     * @param index the index of the parameter.
+     * @return the type.
+     */
+    public Class<?> getType(int index)
+    {
+        return types[index];
+    }
+
+    /**
+     * Gets the parameter types.
+     *
+     * @return a copy of the parameter types.
+     */
+    public Class<?>[] getTypes()
+    {
+        return types.clone();
+    }
+
+    /**
+     * Gets the parameter type names, as accepted by the methods
+     * taking a signature of type names.
+     *
+     * @return a copy of the parameter type names.
+     */
+    public String[] getTypeNames()
+    {
+        return typeNames.clone();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        return obj instanceof Signature && Arrays.equals(types, ((Signature) obj).types);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "(" + String.join(", ", typeNames) + ")";
+    }
+
+    /**
+     * Gets the parameter types without copying them, for use by
+     * the Factory Service.
+     *
+     * @return the parameter types.
+     */
+    Class<?>[] types()
+    {
+        return types;
+    }
+}
@@ -0,0 +1,289 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.fulcrum.factory.utils.ConstructorResolver;
+import org.apache.fulcrum.factory.utils.MethodInvoker;
+
+/**
+ * A factory calling a static factory method of its production class,
+ * such as <code>of</code>, <code>valueOf</code> or <code>newInstance</code>,
+ * instead of a constructor. Parameters and signatures follow the conventions
+ * of the constructor methods of the Factory Service: the signature selects the
+ * overloaded method, and without a signature the method is selected by the
+ * runtime types of the parameters. The resolved methods are cached as method
+ * handles.
+ *
+ * <p>Specified class loaders are not supported, the production class is
+ * loaded by the Factory Service.</p>
+ *
+ * @param <T> the type of the production class
+ *
+ * @version $Id$
+ */
+final class StaticMethodFactory<T> implements Factory<T>
+{
+    /**
+     * The service loading the production class and resolving signatures.
+     */
+    private final DefaultFactoryService service;
+
+    /**
+     * The name of the factory method.
+     */
+    private final String methodName;
+
+    /**
+     * The production class, null until initialized.
+     */
+    private Class<T> clazz;
+
+    /**
+     * Resolved methods, keyed by the signature as a list of type names,
+     * as a {@link Signature} or by the argument types if no signature was given.
+     */
+    private final ConcurrentHashMap<Object, MethodInvoker<T>> invokers =
+        new ConcurrentHashMap<Object, MethodInvoker<T>>(4);
+
+    /**
+     * Constructor
+     *
+     * @param service the Factory Service
+     * @param methodName the name of the factory method
+     */
+    StaticMethodFactory(DefaultFactoryService service, String methodName)
+    {
+        this.service = service;
+        this.methodName = methodName;
+    }
+
+    /**
+     * Loads the production class and checks that it has a factory method
+     * of the configured name.
+     *
+     * @param className the name of the production class
+     * @throws FactoryException if the class or the method is not found.
+     */
+    @Override
+    public void init(String className) throws FactoryException
+    {
+        try
+        {
+            clazz = service.loadClass(className);
+        }
+        catch (ClassNotFoundException x)
+        {
+            throw new FactoryException("Instantiation failed for class " + className, x);
+        }
+        for (Method method : clazz.getMethods())
+        {
+            if (method.getName().equals(methodName) && ConstructorResolver.isFactoryMethod(method, clazz))
+            {
+                return;
+            }
+        }
+        throw new FactoryException("No static factory method " + methodName + " returning " + className);
+    }
+
+    /**
+     * Gets the name of the factory method.
+     *
+     * @return the method name.
+     */
+    String getMethodName()
+    {
+        return methodName;
+    }
+
+    @Override
+    public T getInstance() throws FactoryException
+    {
+        return getInstance(null, null);
+    }
+
+    @Override
+    public T getInstance(ClassLoader loader) throws FactoryException
+    {
+        return getInstance();
+    }
+
+    @Override
+    public T getInstance(Object[] params, String[] signature) throws FactoryException
+    {
+        try
+        {
+            return getInvoker(params, signature).invoke(params);
+        }
+        catch (Exception x)
+        {
+            throw new FactoryException("Instantiation failed for " + clazz.getName() + "." + methodName, x);
+        }
+    }
+
+    @Override
+    public T getInstance(ClassLoader loader, Object[] params, String[] signature) throws FactoryException
+    {
+        return getInstance(params, signature);
+    }
+
+    @Override
+    public T getInstanceBySignature(Object[] params, Signature signature) throws FactoryException
+    {
+        try
+        {
+            return getInvoker(params, signature).invoke(params);
+        }
+        catch (Exception x)
+        {
+            throw new FactoryException("Instantiation failed for " + clazz.getName() + "." + methodName, x);
+        }
+    }
+
+    @Override
+    public T getInstanceBySignature(ClassLoader loader, Object[] params, Signature signature) throws FactoryException
+    {
+        return getInstanceBySignature(params, signature);
+    }
+
+    @Override
+    public boolean isLoaderSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Gets the cached factory method matching a signature. Parameters are
+     * switched to the context of the class loader of the production class
+     * as done by {@link DefaultFactoryService#getSignature(Class, Object[], String[])}.
+     * If no signature but parameters are given, the method is selected by
+     * the types of the parameters.
+     *
+     * @param params an array containing the parameters of the method
+     * @param signature an array containing the signature of the method
+     * @return the method invoker
+     * @throws ClassNotFoundException if any of the signature classes is not found.
+     * @throws NoSuchMethodException if there is no matching factory method.
+     */
+    private MethodInvoker<T> getInvoker(Object[] params, String[] signature)
+        throws ClassNotFoundException, NoSuchMethodException
+    {
+        if (signature == null && params != null && params.length > 0)
+        {
+            return getInvoker(params);
+        }
+        List<String> key = signature != null ? Arrays.asList(signature) : Collections.<String>emptyList();
+        MethodInvoker<T> invoker = invokers.get(key);
+        if (invoker == null)
+        {
+            Class<?>[] sign = service.getSignature(clazz, params, signature);
+            invoker = MethodInvoker.of(getMethod(sign != null ? sign : new Class<?>[0]));
+            if (signature != null)
+            {
+                key = Arrays.asList(signature.clone());
+            }
+            invokers.putIfAbsent(key, invoker);
+        }
+        else if (signature != null)
+        {
+            service.switchParameters(clazz, invoker.getParameterTypes(), params);
+        }
+        return invoker;
+    }
+
+    /**
+     * Gets the cached factory method matching a precompiled signature.
+     *
+     * @param params an array containing the parameters of the method
+     * @param signature the signature of the method
+     * @return the method invoker
+     * @throws NoSuchMethodException if there is no matching factory method.
+     */
+    private MethodInvoker<T> getInvoker(Object[] params, Signature signature) throws NoSuchMethodException
+    {
+        if (signature == null)
+        {
+            signature = Signature.EMPTY;
+        }
+        MethodInvoker<T> invoker = invokers.get(signature);
+        if (invoker == null)
+        {
+            invoker = MethodInvoker.of(getMethod(signature.types()));
+            if (DefaultFactoryService.isVisible(signature.types(), clazz.getClassLoader()))
+            {
+                invokers.putIfAbsent(signature, invoker);
+            }
+        }
+        service.switchParameters(clazz, signature.types(), params);
+        return invoker;
+    }
+
+    /**
+     * Gets the cached factory method selected by the runtime types of the parameters.
+     *
+     * @param params an array containing the parameters of the method
+     * @return the method invoker
+     * @throws NoSuchMethodException if no method or more than one equally
+     * specific method is applicable.
+     */
+    private MethodInvoker<T> getInvoker(Object[] params) throws NoSuchMethodException
+    {
+        Class<?>[] types = new Class<?>[params.length];
+        for (int i = 0; i < params.length; i++)
+        {
+            types[i] = params[i] != null ? params[i].getClass() : null;
+        }
+        DefaultFactoryService.ArgumentTypes key = new DefaultFactoryService.ArgumentTypes(types);
+        MethodInvoker<T> invoker = invokers.get(key);
+        if (invoker == null)
+        {
+            invoker = MethodInvoker.of(ConstructorResolver.resolve(clazz, methodName, types));
+            if (DefaultFactoryService.isVisible(types, clazz.getClassLoader()))
+            {
+                invokers.putIfAbsent(key, invoker);
+            }
+        }
+        service.switchParameters(clazz, invoker.getParameterTypes(), params);
+        return invoker;
+    }
+
+    /**
+     * Gets the factory method with the given parameter types.
+     *
+     * @param sign the parameter types
+     * @return the method
+     * @throws NoSuchMethodException if there is no such factory method.
+     */
+    private Method getMethod(Class<?>[] sign) throws NoSuchMethodException
+    {
+        Method method = clazz.getMethod(methodName, sign);
+        if (!ConstructorResolver.isFactoryMethod(method, clazz))
+        {
+            throw new NoSuchMethodException("Method " + method + " is not a static factory method of "
+                + clazz.getName());
+        }
+        return method;
+    }
+}
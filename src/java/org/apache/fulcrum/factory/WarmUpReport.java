@@ -0,0 +1,120 @@
+package org.apache.fulcrum.factory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of warming up classes and factories of the
+ * Factory Service.
+ *
+ * @version $Id$
+ */
+public class WarmUpReport
+{
+    /** the entries warmed up */
+    private final List<String> warmed;
+
+    /** the failed entries with the reason */
+    private final Map<String, String> failed;
+
+    /** the entries not finished within the time budget */
+    private final List<String> pending;
+
+    /** the elapsed time in milliseconds */
+    private final long elapsedMillis;
+
+    /**
+     * Constructor
+     *
+     * @param warmed the entries warmed up.
+     * @param failed the failed entries with the reason.
+     * @param pending the entries not finished within the time budget.
+     * @param elapsedMillis the elapsed time in milliseconds.
+     */
+    public WarmUpReport(List<String> warmed, Map<String, String> failed, List<String> pending, long elapsedMillis)
+    {
+        this.warmed = Collections.unmodifiableList(warmed);
+        this.failed = Collections.unmodifiableMap(failed);
+        this.pending = Collections.unmodifiableList(pending);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Gets the entries warmed up. An entry is a class name, followed by
+     * the constructor signature in parentheses if one was given.
+     *
+     * @return the entries.
+     */
+    public List<String> getWarmed()
+    {
+        return warmed;
+    }
+
+    /**
+     * Gets the entries which failed.
+     *
+     * @return the reasons keyed by entry.
+     */
+    public Map<String, String> getFailed()
+    {
+        return failed;
+    }
+
+    /**
+     * Gets the entries not finished within the time budget.
+     *
+     * @return the entries.
+     */
+    public List<String> getPending()
+    {
+        return pending;
+    }
+
+    /**
+     * Gets the elapsed time.
+     *
+     * @return the time in milliseconds.
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Warmed up ").append(warmed.size()).append(" of ")
+            .append(warmed.size() + failed.size() + pending.size())
+            .append(" entries in ").append(elapsedMillis).append(" ms");
+        if (!failed.isEmpty())
+        {
+            sb.append(", failed: ").append(failed);
+        }
+        if (!pending.isEmpty())
+        {
+            sb.append(", not finished within budget: ").append(pending);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,309 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent cache of resolved classes keyed by the initiating class
+ * loader and the class name.
+ *
+ * <p>Class loaders are held by weak references and the cached classes
+ * themselves are weakly reachable from the cache, so a redeployed
+ * context can be garbage collected even if its classes are still
+ * cached here.</p>
+ *
+ * @version $Id$
+ */
+public class ClassCache
+{
+    /**
+     * The default maximum number of classes cached per class loader.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * The key used for the bootstrap class loader.
+     */
+    private static final LoaderKey BOOTSTRAP = new LoaderKey(null, null);
+
+    /**
+     * The maximum number of classes cached per class loader.
+     */
+    private final int maxSize;
+
+    /**
+     * Queue of class loaders which have been garbage collected.
+     */
+    private final ReferenceQueue<ClassLoader> staleLoaders = new ReferenceQueue<ClassLoader>();
+
+    /**
+     * Cached classes per class loader.
+     */
+    private final ConcurrentHashMap<Object, ConcurrentHashMap<String, WeakReference<Class<?>>>> loaders =
+        new ConcurrentHashMap<Object, ConcurrentHashMap<String, WeakReference<Class<?>>>>();
+
+    /**
+     * Cache hits.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Cache misses.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache with the default size.
+     */
+    public ClassCache()
+    {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a cache with the given size.
+     *
+     * @param maxSize the maximum number of classes cached per class loader.
+     */
+    public ClassCache(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets a cached class.
+     *
+     * @param loader the initiating class loader, null for the bootstrap loader.
+     * @param className the name of the class.
+     * @return the class or null if not cached.
+     */
+    public Class<?> get(ClassLoader loader, String className)
+    {
+        ConcurrentHashMap<String, WeakReference<Class<?>>> classes =
+            loaders.get(loader == null ? BOOTSTRAP : new LookupKey(loader));
+        if (classes != null)
+        {
+            WeakReference<Class<?>> ref = classes.get(className);
+            if (ref != null)
+            {
+                Class<?> clazz = ref.get();
+                if (clazz != null)
+                {
+                    hits.increment();
+                    return clazz;
+                }
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches a class.
+     *
+     * @param loader the initiating class loader, null for the bootstrap loader.
+     * @param className the name of the class.
+     * @param clazz the resolved class.
+     */
+    public void put(ClassLoader loader, String className, Class<?> clazz)
+    {
+        if (maxSize <= 0)
+        {
+            return;
+        }
+
+        expungeStaleLoaders();
+
+        Object key = loader == null ? BOOTSTRAP : new LoaderKey(loader, staleLoaders);
+        ConcurrentHashMap<String, WeakReference<Class<?>>> classes = loaders.get(key);
+        if (classes == null)
+        {
+            classes = new ConcurrentHashMap<String, WeakReference<Class<?>>>();
+            ConcurrentHashMap<String, WeakReference<Class<?>>> existing = loaders.putIfAbsent(key, classes);
+            if (existing != null)
+            {
+                classes = existing;
+            }
+        }
+
+        if (classes.size() >= maxSize)
+        {
+            // Make room by evicting an arbitrary entry
+            Iterator<String> it = classes.keySet().iterator();
+            if (it.hasNext())
+            {
+                it.next();
+                it.remove();
+            }
+        }
+
+        classes.put(className, new WeakReference<Class<?>>(clazz));
+    }
+
+    /**
+     * Removes all cached classes.
+     */
+    public void clear()
+    {
+        loaders.clear();
+    }
+
+    /**
+     * Gets the number of cached classes.
+     *
+     * @return the number of entries over all class loaders.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (ConcurrentHashMap<String, WeakReference<Class<?>>> classes : loaders.values())
+        {
+            size += classes.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the maximum number of classes cached per class loader.
+     *
+     * @return the maximum size.
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Gets the number of successful lookups.
+     *
+     * @return the hit count.
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of failed lookups.
+     *
+     * @return the miss count.
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Drops the entries of class loaders that have been garbage collected.
+     */
+    private void expungeStaleLoaders()
+    {
+        Reference<? extends ClassLoader> ref;
+        while ((ref = staleLoaders.poll()) != null)
+        {
+            loaders.remove(ref);
+        }
+    }
+
+    /**
+     * A weak reference to a class loader, compared by identity.
+     */
+    private static final class LoaderKey extends WeakReference<ClassLoader>
+    {
+        /** The identity hash of the loader */
+        private final int hash;
+
+        /**
+         * @param loader the class loader
+         * @param queue the queue to register with
+         */
+        LoaderKey(ClassLoader loader, ReferenceQueue<ClassLoader> queue)
+        {
+            super(loader, queue);
+            hash = System.identityHashCode(loader);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (obj instanceof LookupKey)
+            {
+                ClassLoader loader = get();
+                return loader != null && loader == ((LookupKey) obj).loader;
+            }
+            if (obj instanceof LoaderKey)
+            {
+                ClassLoader loader = get();
+                return loader != null && loader == ((LoaderKey) obj).get();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A short-lived strong key used for lookups only.
+     */
+    private static final class LookupKey
+    {
+        /** The class loader */
+        private final ClassLoader loader;
+
+        /**
+         * @param loader the class loader
+         */
+        LookupKey(ClassLoader loader)
+        {
+            this.loader = loader;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(loader);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof LoaderKey)
+            {
+                return loader == ((LoaderKey) obj).get();
+            }
+            return obj instanceof LookupKey && loader == ((LookupKey) obj).loader;
+        }
+    }
+}
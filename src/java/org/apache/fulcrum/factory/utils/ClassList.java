@@ -0,0 +1,255 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded record of the class names and constructor signatures
+ * requested from the Factory Service, which can be written to a file
+ * and read back to warm up the service after a restart.
+ *
+ * <p>The file has one entry per line: the class name, followed by the
+ * signature type names separated by spaces. Lines starting with
+ * <code>#</code> are comments.</p>
+ *
+ * @version $Id$
+ */
+public class ClassList
+{
+    /**
+     * The default maximum number of recorded entries.
+     */
+    public static final int DEFAULT_SIZE = 4096;
+
+    /**
+     * The header of the file.
+     */
+    private static final String HEADER = "# Fulcrum Factory class list";
+
+    /**
+     * The pattern of valid class and type names.
+     */
+    private static final Pattern NAME = Pattern.compile("[\\p{javaJavaIdentifierPart}.$\\[\\];/]+");
+
+    /**
+     * The maximum number of recorded entries.
+     */
+    private final int maxSize;
+
+    /**
+     * The recorded signatures per class name.
+     */
+    private final ConcurrentHashMap<String, Set<List<String>>> entries =
+        new ConcurrentHashMap<String, Set<List<String>>>();
+
+    /**
+     * The number of recorded entries.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a class list with the default size.
+     */
+    public ClassList()
+    {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a class list with the given size.
+     *
+     * @param maxSize the maximum number of recorded entries.
+     */
+    public ClassList(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Records a requested class name and constructor signature.
+     * Entries beyond the maximum size are ignored.
+     *
+     * @param className the class name.
+     * @param signature the constructor signature, null for the no-arg constructor.
+     */
+    public void record(String className, String[] signature)
+    {
+        List<String> key = signature != null ? Arrays.asList(signature) : Collections.<String>emptyList();
+        Set<List<String>> signatures = entries.get(className);
+        if (signatures != null && signatures.contains(key))
+        {
+            return;
+        }
+        if (size.get() >= maxSize)
+        {
+            return;
+        }
+        if (signatures == null)
+        {
+            signatures = entries.computeIfAbsent(className, k -> ConcurrentHashMap.<List<String>>newKeySet());
+        }
+        if (signatures.add(signature != null ? Arrays.asList(signature.clone()) : key))
+        {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of recorded entries.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+        return size.get();
+    }
+
+    /**
+     * Clears all entries.
+     */
+    public void clear()
+    {
+        entries.clear();
+        size.set(0);
+    }
+
+    /**
+     * Writes the recorded entries to a file, replacing it atomically
+     * if supported by the file system.
+     *
+     * @param file the file.
+     * @throws IOException if writing fails.
+     */
+    public void write(Path file) throws IOException
+    {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null)
+        {
+            Files.createDirectories(dir);
+        }
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try
+        {
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+            {
+                out.write(HEADER);
+                out.newLine();
+                for (Map.Entry<String, Set<List<String>>> entry : new TreeMap<String, Set<List<String>>>(entries).entrySet())
+                {
+                    for (List<String> signature : entry.getValue())
+                    {
+                        out.write(entry.getKey());
+                        for (String type : signature)
+                        {
+                            out.write(' ');
+                            out.write(type);
+                        }
+                        out.newLine();
+                    }
+                }
+            }
+            try
+            {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException x)
+            {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads the entries of a file. Malformed lines are skipped.
+     *
+     * @param file the file.
+     * @return the class names with their constructor signatures, empty if
+     * the file does not exist.
+     * @throws IOException if reading fails.
+     */
+    public static List<Map.Entry<String, String[]>> read(Path file) throws IOException
+    {
+        List<Map.Entry<String, String[]>> list = new ArrayList<Map.Entry<String, String[]>>();
+        if (!Files.isRegularFile(file))
+        {
+            return list;
+        }
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+                String[] names = line.split("\\s+");
+                if (isValid(names))
+                {
+                    list.add(new AbstractMap.SimpleImmutableEntry<String, String[]>(names[0],
+                        Arrays.copyOfRange(names, 1, names.length)));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Checks the names of an entry.
+     *
+     * @param names the class name and the signature type names.
+     * @return true if all names are valid.
+     */
+    private static boolean isValid(String[] names)
+    {
+        for (String name : names)
+        {
+            if (!NAME.matcher(name).matches())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,148 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * A resolved constructor bound to a method handle taking the
+ * constructor parameters as an object array. Once created, an
+ * invoker performs no further lookups or access checks.
+ *
+ * @param <T> the type of the constructed objects
+ *
+ * @version $Id$
+ */
+public final class ConstructorInvoker<T>
+{
+    /**
+     * An empty parameter array.
+     */
+    private static final Object[] NO_PARAMS = new Object[0];
+
+    /**
+     * The handle of type (Object[])Object, or null if not accessible.
+     */
+    private final MethodHandle handle;
+
+    /**
+     * The constructor, used reflectively if no handle is available.
+     */
+    private final Constructor<T> constructor;
+
+    /**
+     * The parameter types of the constructor.
+     */
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * Creates an invoker for a constructor.
+     *
+     * @param constructor the constructor.
+     */
+    private ConstructorInvoker(Constructor<T> constructor)
+    {
+        this.constructor = constructor;
+        this.parameterTypes = constructor.getParameterTypes();
+
+        MethodHandle mh;
+        try
+        {
+            mh = MethodHandles.publicLookup().unreflectConstructor(constructor)
+                .asSpreader(Object[].class, parameterTypes.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        }
+        catch (IllegalAccessException x)
+        {
+            // Not publicly accessible, fall back to reflection
+            mh = null;
+        }
+        this.handle = mh;
+    }
+
+    /**
+     * Creates an invoker for a constructor.
+     *
+     * @param <T> the type of the constructed objects
+     * @param constructor the constructor.
+     * @return the invoker.
+     */
+    public static <T> ConstructorInvoker<T> of(Constructor<T> constructor)
+    {
+        return new ConstructorInvoker<T>(constructor);
+    }
+
+    /**
+     * Gets the parameter types of the constructor.
+     *
+     * @return the parameter types, not to be modified.
+     */
+    public Class<?>[] getParameterTypes()
+    {
+        return parameterTypes;
+    }
+
+    /**
+     * Gets the constructor.
+     *
+     * @return the constructor.
+     */
+    public Constructor<T> getConstructor()
+    {
+        return constructor;
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param params the parameters of the constructor, may be null for none.
+     * @return the instance.
+     * @throws Exception if the constructor fails or the parameters do not match.
+     */
+    @SuppressWarnings("unchecked")
+    public T newInstance(Object[] params) throws Exception
+    {
+        if (params == null)
+        {
+            params = NO_PARAMS;
+        }
+        if (handle == null)
+        {
+            return constructor.newInstance(params);
+        }
+
+        try
+        {
+            return (T) (Object) handle.invokeExact(params);
+        }
+        catch (Exception | Error x)
+        {
+            throw x;
+        }
+        catch (Throwable t)
+        {
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+}
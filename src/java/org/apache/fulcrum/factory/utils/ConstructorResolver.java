@@ -0,0 +1,287 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the public constructor or static factory method of a class
+ * matching the runtime types of the arguments, following the phases of
+ * the Java language: candidates applicable by subtyping are preferred over
+ * those requiring unboxing and widening of primitives, and the most
+ * specific applicable candidate is chosen. Variable arity candidates are
+ * only matched with an explicit array argument.
+ *
+ * @version $Id$
+ */
+public final class ConstructorResolver
+{
+    /**
+     * Primitive types by wrapper class.
+     */
+    private static final Map<Class<?>, Class<?>> PRIMITIVES = new HashMap<Class<?>, Class<?>>(16);
+
+    /**
+     * Primitive types a primitive type widens to, including itself.
+     */
+    private static final Map<Class<?>, List<Class<?>>> WIDENING = new HashMap<Class<?>, List<Class<?>>>(16);
+
+    static
+    {
+        PRIMITIVES.put(Boolean.class, Boolean.TYPE);
+        PRIMITIVES.put(Character.class, Character.TYPE);
+        PRIMITIVES.put(Byte.class, Byte.TYPE);
+        PRIMITIVES.put(Short.class, Short.TYPE);
+        PRIMITIVES.put(Integer.class, Integer.TYPE);
+        PRIMITIVES.put(Long.class, Long.TYPE);
+        PRIMITIVES.put(Float.class, Float.TYPE);
+        PRIMITIVES.put(Double.class, Double.TYPE);
+
+        WIDENING.put(Boolean.TYPE, Arrays.<Class<?>>asList(Boolean.TYPE));
+        WIDENING.put(Byte.TYPE, Arrays.<Class<?>>asList(Byte.TYPE, Short.TYPE, Integer.TYPE, Long.TYPE,
+            Float.TYPE, Double.TYPE));
+        WIDENING.put(Short.TYPE, Arrays.<Class<?>>asList(Short.TYPE, Integer.TYPE, Long.TYPE,
+            Float.TYPE, Double.TYPE));
+        WIDENING.put(Character.TYPE, Arrays.<Class<?>>asList(Character.TYPE, Integer.TYPE, Long.TYPE,
+            Float.TYPE, Double.TYPE));
+        WIDENING.put(Integer.TYPE, Arrays.<Class<?>>asList(Integer.TYPE, Long.TYPE, Float.TYPE, Double.TYPE));
+        WIDENING.put(Long.TYPE, Arrays.<Class<?>>asList(Long.TYPE, Float.TYPE, Double.TYPE));
+        WIDENING.put(Float.TYPE, Arrays.<Class<?>>asList(Float.TYPE, Double.TYPE));
+        WIDENING.put(Double.TYPE, Arrays.<Class<?>>asList(Double.TYPE));
+    }
+
+    /**
+     * Utility class.
+     */
+    private ConstructorResolver()
+    {
+        // no instances
+    }
+
+    /**
+     * Selects the constructor of a class for arguments of the given types.
+     *
+     * @param <T> the type of the class
+     * @param clazz the class.
+     * @param argumentTypes the classes of the arguments, null for null arguments.
+     * @return the most specific applicable constructor.
+     * @throws NoSuchMethodException if no constructor is applicable, or several are
+     * and none is most specific.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Constructor<T> resolve(Class<T> clazz, Class<?>[] argumentTypes)
+        throws NoSuchMethodException
+    {
+        Constructor<?> constructor = select(Arrays.asList(clazz.getConstructors()), argumentTypes,
+            "constructors of " + clazz.getName());
+        if (constructor == null)
+        {
+            throw new NoSuchMethodException("No constructor of " + clazz.getName()
+                + " applicable to arguments " + describe(argumentTypes));
+        }
+        return (Constructor<T>) constructor;
+    }
+
+    /**
+     * Selects a static factory method of a class for arguments of the given types.
+     *
+     * @param clazz the class.
+     * @param name the name of the method.
+     * @param argumentTypes the classes of the arguments, null for null arguments.
+     * @return the most specific applicable factory method.
+     * @throws NoSuchMethodException if no factory method is applicable, or several are
+     * and none is most specific.
+     * @see #isFactoryMethod(Method, Class)
+     */
+    public static Method resolve(Class<?> clazz, String name, Class<?>[] argumentTypes)
+        throws NoSuchMethodException
+    {
+        List<Method> candidates = new ArrayList<Method>();
+        for (Method method : clazz.getMethods())
+        {
+            if (method.getName().equals(name) && isFactoryMethod(method, clazz))
+            {
+                candidates.add(method);
+            }
+        }
+        Method method = select(candidates, argumentTypes, "methods " + clazz.getName() + "." + name);
+        if (method == null)
+        {
+            throw new NoSuchMethodException("No factory method " + clazz.getName() + "." + name
+                + " applicable to arguments " + describe(argumentTypes));
+        }
+        return method;
+    }
+
+    /**
+     * Tests if a method is a factory method of a class, i.e. a public static
+     * method returning instances of the class.
+     *
+     * @param method the method.
+     * @param clazz the class.
+     * @return true if the method is a factory method.
+     */
+    public static boolean isFactoryMethod(Method method, Class<?> clazz)
+    {
+        int modifiers = method.getModifiers();
+        return Modifier.isStatic(modifiers) && Modifier.isPublic(modifiers)
+            && clazz.isAssignableFrom(method.getReturnType());
+    }
+
+    /**
+     * Selects the most specific applicable candidate in the phases of
+     * the Java language.
+     *
+     * @param <E> the type of the candidates
+     * @param candidates the candidates
+     * @param argumentTypes the classes of the arguments
+     * @param description the description of the candidates for errors
+     * @return the most specific candidate, or null if none is applicable
+     * @throws NoSuchMethodException if none is most specific
+     */
+    private static <E extends Executable> E select(List<E> candidates, Class<?>[] argumentTypes,
+        String description) throws NoSuchMethodException
+    {
+        for (boolean unboxing : new boolean[] { false, true })
+        {
+            List<E> applicable = new ArrayList<E>();
+            for (E candidate : candidates)
+            {
+                if (isApplicable(candidate.getParameterTypes(), argumentTypes, unboxing))
+                {
+                    applicable.add(candidate);
+                }
+            }
+            if (!applicable.isEmpty())
+            {
+                return mostSpecific(applicable, argumentTypes, description);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Selects the most specific of several applicable candidates.
+     *
+     * @param <E> the type of the candidates
+     * @param applicable the applicable candidates
+     * @param argumentTypes the classes of the arguments
+     * @param description the description of the candidates for errors
+     * @return the most specific candidate
+     * @throws NoSuchMethodException if none is most specific
+     */
+    private static <E extends Executable> E mostSpecific(List<E> applicable, Class<?>[] argumentTypes,
+        String description) throws NoSuchMethodException
+    {
+        candidates:
+        for (E candidate : applicable)
+        {
+            for (E other : applicable)
+            {
+                if (other != candidate
+                    && !isApplicable(other.getParameterTypes(), candidate.getParameterTypes(), true))
+                {
+                    continue candidates;
+                }
+            }
+            return candidate;
+        }
+        throw new NoSuchMethodException("Ambiguous " + description
+            + " for arguments " + describe(argumentTypes) + ": " + applicable);
+    }
+
+    /**
+     * Tests if parameters accept arguments of the given types.
+     *
+     * @param parameterTypes the parameter types
+     * @param argumentTypes the argument types, null for null arguments
+     * @param unboxing whether to allow unboxing and widening of primitives
+     * @return true if all arguments are accepted
+     */
+    private static boolean isApplicable(Class<?>[] parameterTypes, Class<?>[] argumentTypes, boolean unboxing)
+    {
+        if (parameterTypes.length != argumentTypes.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < parameterTypes.length; i++)
+        {
+            if (!isAssignable(parameterTypes[i], argumentTypes[i], unboxing))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests if a parameter accepts an argument of the given type.
+     *
+     * @param parameterType the parameter type
+     * @param argumentType the argument type, null for a null argument
+     * @param unboxing whether to allow unboxing and widening of primitives
+     * @return true if the argument is accepted
+     */
+    private static boolean isAssignable(Class<?> parameterType, Class<?> argumentType, boolean unboxing)
+    {
+        if (argumentType == null)
+        {
+            return !parameterType.isPrimitive();
+        }
+        if (!parameterType.isPrimitive())
+        {
+            return parameterType.isAssignableFrom(argumentType);
+        }
+        if (!unboxing)
+        {
+            return false;
+        }
+        Class<?> primitive = argumentType.isPrimitive() ? argumentType : PRIMITIVES.get(argumentType);
+        return primitive != null && WIDENING.get(primitive).contains(parameterType);
+    }
+
+    /**
+     * Describes argument types.
+     *
+     * @param argumentTypes the argument types
+     * @return the description
+     */
+    private static String describe(Class<?>[] argumentTypes)
+    {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < argumentTypes.length; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(argumentTypes[i] != null ? argumentTypes[i].getName() : "null");
+        }
+        return sb.append(')').toString();
+    }
+}
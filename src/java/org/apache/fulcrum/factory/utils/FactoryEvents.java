@@ -0,0 +1,305 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events emitted by the Factory Service.
+ *
+ * <p>Each event is started before the operation and finished after it.
+ * Events are only created if enabled in a running recording, so requests
+ * allocate nothing while no recording is running. The event fields are
+ * only filled in if the event exceeds its threshold, which can be changed
+ * in the recording settings, e.g.
+ * <code>org.apache.fulcrum.factory.Construct#threshold=1 ms</code>.</p>
+ *
+ * @version $Id$
+ */
+public final class FactoryEvents
+{
+    /**
+     * Utility class.
+     */
+    private FactoryEvents()
+    {
+        // no instances
+    }
+
+    /**
+     * Describes the identity of a class loader.
+     *
+     * @param loader the class loader, null for the bootstrap loader.
+     * @return the class name and identity hash of the loader.
+     */
+    static String describe(ClassLoader loader)
+    {
+        if (loader == null)
+        {
+            return "bootstrap";
+        }
+        return loader.getClass().getName() + '@' + Integer.toHexString(System.identityHashCode(loader));
+    }
+
+    /**
+     * A class name that could not be found in any class loader.
+     */
+    @Name("org.apache.fulcrum.factory.ClassMiss")
+    @Label("Class Lookup Miss")
+    @Category({ "Fulcrum", "Factory" })
+    @Description("A class name could not be resolved by the Factory Service")
+    @Threshold("0 ms")
+    public static final class ClassMiss extends Event
+    {
+        /** the type of the event, enabled while a recording includes it */
+        private static final EventType TYPE = EventType.getEventType(ClassMiss.class);
+
+        /**
+         * Creates and begins an event if it is enabled.
+         *
+         * @return the event, or null if it is not enabled.
+         */
+        public static ClassMiss start()
+        {
+            if (!TYPE.isEnabled())
+            {
+                return null;
+            }
+            ClassMiss event = new ClassMiss();
+            event.begin();
+            return event;
+        }
+
+        /** the class name */
+        @Label("Class Name")
+        private String className;
+
+        /** the initiating class loader */
+        @Label("Class Loader")
+        private String loader;
+
+        /** whether the miss was answered by the cache of missing classes */
+        @Label("Cached")
+        private boolean cached;
+
+        /**
+         * Ends the event and commits it if enabled.
+         *
+         * @param className the class name.
+         * @param loader the initiating class loader.
+         * @param cached whether the miss was answered by the cache of missing classes.
+         */
+        public void finish(String className, ClassLoader loader, boolean cached)
+        {
+            if (shouldCommit())
+            {
+                this.className = className;
+                this.loader = describe(loader);
+                this.cached = cached;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * An instance created by a constructor.
+     */
+    @Name("org.apache.fulcrum.factory.Construct")
+    @Label("Constructor Invocation")
+    @Category({ "Fulcrum", "Factory" })
+    @Description("An instance was created by the Factory Service through a constructor")
+    @Threshold("10 ms")
+    public static final class Construct extends Event
+    {
+        /** the type of the event, enabled while a recording includes it */
+        private static final EventType TYPE = EventType.getEventType(Construct.class);
+
+        /**
+         * Creates and begins an event if it is enabled.
+         *
+         * @return the event, or null if it is not enabled.
+         */
+        public static Construct start()
+        {
+            if (!TYPE.isEnabled())
+            {
+                return null;
+            }
+            Construct event = new Construct();
+            event.begin();
+            return event;
+        }
+
+        /** the class name */
+        @Label("Class Name")
+        private String className;
+
+        /** the class loader of the class */
+        @Label("Class Loader")
+        private String loader;
+
+        /** the number of constructor parameters */
+        @Label("Parameter Count")
+        private int parameterCount;
+
+        /**
+         * Ends the event and commits it if enabled.
+         *
+         * @param clazz the constructed class.
+         * @param params the constructor parameters, may be null.
+         */
+        public void finish(Class<?> clazz, Object[] params)
+        {
+            if (shouldCommit())
+            {
+                this.className = clazz.getName();
+                this.loader = describe(clazz.getClassLoader());
+                this.parameterCount = params != null ? params.length : 0;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * An instance created by a customized factory.
+     */
+    @Name("org.apache.fulcrum.factory.FactoryInvocation")
+    @Label("Factory Invocation")
+    @Category({ "Fulcrum", "Factory" })
+    @Description("An instance was created by a customized Factory")
+    @Threshold("10 ms")
+    public static final class FactoryInvocation extends Event
+    {
+        /** the type of the event, enabled while a recording includes it */
+        private static final EventType TYPE = EventType.getEventType(FactoryInvocation.class);
+
+        /**
+         * Creates and begins an event if it is enabled.
+         *
+         * @return the event, or null if it is not enabled.
+         */
+        public static FactoryInvocation start()
+        {
+            if (!TYPE.isEnabled())
+            {
+                return null;
+            }
+            FactoryInvocation event = new FactoryInvocation();
+            event.begin();
+            return event;
+        }
+
+        /** the class name */
+        @Label("Class Name")
+        private String className;
+
+        /** the class name of the factory */
+        @Label("Factory Class")
+        private String factoryClass;
+
+        /** the requested class loader */
+        @Label("Class Loader")
+        private String loader;
+
+        /**
+         * Ends the event and commits it if enabled.
+         *
+         * @param className the requested class name.
+         * @param factory the factory.
+         * @param loader the requested class loader, may be null.
+         */
+        public void finish(String className, Object factory, ClassLoader loader)
+        {
+            if (shouldCommit())
+            {
+                this.className = className;
+                this.factoryClass = factory.getClass().getName();
+                this.loader = loader != null ? describe(loader) : null;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A parameter switched into the context of a different class loader.
+     */
+    @Name("org.apache.fulcrum.factory.ContextSwitch")
+    @Label("Parameter Context Switch")
+    @Category({ "Fulcrum", "Factory" })
+    @Description("A constructor parameter was copied into the context of a different class loader")
+    @Threshold("1 ms")
+    public static final class ContextSwitch extends Event
+    {
+        /** the type of the event, enabled while a recording includes it */
+        private static final EventType TYPE = EventType.getEventType(ContextSwitch.class);
+
+        /**
+         * Creates and begins an event if it is enabled.
+         *
+         * @return the event, or null if it is not enabled.
+         */
+        public static ContextSwitch start()
+        {
+            if (!TYPE.isEnabled())
+            {
+                return null;
+            }
+            ContextSwitch event = new ContextSwitch();
+            event.begin();
+            return event;
+        }
+
+        /** the class name of the parameter */
+        @Label("Class Name")
+        private String className;
+
+        /** the target class loader */
+        @Label("Class Loader")
+        private String loader;
+
+        /** whether the switch succeeded */
+        @Label("Switched")
+        private boolean switched;
+
+        /**
+         * Ends the event and commits it if enabled.
+         *
+         * @param object the parameter.
+         * @param loader the target class loader.
+         * @param switched whether the switch succeeded.
+         */
+        public void finish(Object object, ClassLoader loader, boolean switched)
+        {
+            if (shouldCommit())
+            {
+                this.className = object.getClass().getName();
+                this.loader = describe(loader);
+                this.switched = switched;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.fulcrum.factory.FactoryStatistics;
+import org.apache.fulcrum.factory.FactoryStatistics.Phase;
+
+/**
+ * Collects per class name counters and latency histograms of the
+ * phases of instantiation. All counters are striped, so recording
+ * scales with the number of threads. Class names beyond the maximum
+ * number of tracked names are collected under {@link #OTHER_CLASSES}.
+ *
+ * @version $Id$
+ */
+public class FactoryMetrics
+{
+    /**
+     * The default maximum number of tracked class names.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * The name collecting the class names beyond the maximum.
+     */
+    public static final String OTHER_CLASSES = "(other)";
+
+    /**
+     * The number of power-of-two buckets, the last one collecting all
+     * times of 2^(BUCKETS-2) ns and above.
+     */
+    static final int BUCKETS = 40;
+
+    /**
+     * The phases.
+     */
+    private static final Phase[] PHASES = Phase.values();
+
+    /**
+     * Metrics per class name.
+     */
+    private final ConcurrentHashMap<String, Histogram[]> classes = new ConcurrentHashMap<String, Histogram[]>();
+
+    /**
+     * The maximum number of tracked class names.
+     */
+    private final int maxSize;
+
+    /**
+     * Creates metrics tracking the default number of class names.
+     */
+    public FactoryMetrics()
+    {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates metrics.
+     *
+     * @param maxSize the maximum number of tracked class names.
+     */
+    public FactoryMetrics(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Records the duration of a phase.
+     *
+     * @param className the class name.
+     * @param phase the phase.
+     * @param nanos the duration in nanoseconds.
+     */
+    public void record(String className, Phase phase, long nanos)
+    {
+        Histogram[] histograms = classes.get(className);
+        if (histograms == null)
+        {
+            histograms = getHistograms(classes.size() < maxSize ? className : OTHER_CLASSES);
+        }
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Gets the histograms of a name, creating them if needed.
+     *
+     * @param name the class name.
+     * @return the histograms per phase.
+     */
+    private Histogram[] getHistograms(String name)
+    {
+        Histogram[] histograms = classes.get(name);
+        if (histograms == null)
+        {
+            histograms = new Histogram[PHASES.length];
+            for (int i = 0; i < histograms.length; i++)
+            {
+                histograms[i] = new Histogram();
+            }
+            Histogram[] existing = classes.putIfAbsent(name, histograms);
+            if (existing != null)
+            {
+                histograms = existing;
+            }
+        }
+        return histograms;
+    }
+
+    /**
+     * Gets the maximum number of tracked class names.
+     *
+     * @return the maximum size.
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Takes a snapshot of the collected statistics.
+     *
+     * @return the snapshot.
+     */
+    public FactoryStatistics snapshot()
+    {
+        Map<String, FactoryStatistics.ClassStatistics> snapshot =
+            new HashMap<String, FactoryStatistics.ClassStatistics>();
+        for (Map.Entry<String, Histogram[]> entry : classes.entrySet())
+        {
+            Map<Phase, FactoryStatistics.Timing> timings =
+                new EnumMap<Phase, FactoryStatistics.Timing>(Phase.class);
+            for (Phase phase : PHASES)
+            {
+                Histogram histogram = entry.getValue()[phase.ordinal()];
+                if (histogram.count.sum() > 0)
+                {
+                    timings.put(phase, histogram.snapshot());
+                }
+            }
+            snapshot.put(entry.getKey(), new FactoryStatistics.ClassStatistics(timings));
+        }
+        return new FactoryStatistics(snapshot);
+    }
+
+    /**
+     * Discards all collected statistics.
+     */
+    public void reset()
+    {
+        classes.clear();
+    }
+
+    /**
+     * A latency histogram with power-of-two buckets.
+     */
+    private static final class Histogram
+    {
+        /** the number of events */
+        final LongAdder count = new LongAdder();
+
+        /** the total time */
+        final LongAdder total = new LongAdder();
+
+        /** the maximum time */
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /** the bucket counts */
+        final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        /**
+         * Creates the buckets.
+         */
+        Histogram()
+        {
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param nanos the duration in nanoseconds
+         */
+        void record(long nanos)
+        {
+            if (nanos < 0)
+            {
+                nanos = 0;
+            }
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+
+            buckets[Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1)].increment();
+        }
+
+        /**
+         * @return a snapshot of the histogram
+         */
+        FactoryStatistics.Timing snapshot()
+        {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                counts[i] = buckets[i].sum();
+            }
+            return new FactoryStatistics.Timing(count.sum(), total.sum(), max.get(), counts);
+        }
+    }
+}
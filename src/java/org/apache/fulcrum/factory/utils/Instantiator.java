@@ -0,0 +1,223 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+
+/**
+ * Creates instances of classes through their no-arg constructors.
+ *
+ * <p>An instantiator is resolved once per class and kept in a
+ * {@link ClassValue}. For public constructors of classes visible from
+ * this class loader it is generated by the {@link LambdaMetafactory},
+ * so creating an instance is a plain allocation and constructor call.
+ * Other public constructors are called through a method handle and the
+ * remaining ones reflectively.</p>
+ *
+ * @version $Id$
+ */
+public final class Instantiator
+{
+    /**
+     * No-arg instantiators per class.
+     */
+    private static final ClassValue<Callable<?>> INSTANTIATORS = new ClassValue<Callable<?>>()
+    {
+        @Override
+        protected Callable<?> computeValue(Class<?> type)
+        {
+            return createInstantiator(type);
+        }
+    };
+
+    /**
+     * Utility class.
+     */
+    private Instantiator()
+    {
+        // no instances
+    }
+
+    /**
+     * Creates a new instance of a class using its no-arg constructor.
+     *
+     * @param <T> the type of the class
+     * @param clazz the class.
+     * @return the instance.
+     * @throws Exception if the class cannot be instantiated or the constructor fails.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newInstance(Class<T> clazz) throws Exception
+    {
+        return (T) INSTANTIATORS.get(clazz).call();
+    }
+
+    /**
+     * Gets the no-arg instantiator of a class.
+     *
+     * @param <T> the type of the class
+     * @param clazz the class.
+     * @return the instantiator.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Callable<T> forClass(Class<T> clazz)
+    {
+        return (Callable<T>) INSTANTIATORS.get(clazz);
+    }
+
+    /**
+     * Creates the no-arg instantiator of a class.
+     *
+     * @param type the class.
+     * @return the instantiator.
+     */
+    private static Callable<?> createInstantiator(Class<?> type)
+    {
+        if (type.isInterface() || type.isArray() || type.isPrimitive() || type.isEnum()
+            || Modifier.isAbstract(type.getModifiers()))
+        {
+            return failingInstantiator(type.getName() + " cannot be instantiated");
+        }
+
+        final MethodHandle constructor;
+        try
+        {
+            constructor = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class));
+        }
+        catch (NoSuchMethodException | IllegalAccessException x)
+        {
+            return reflectiveInstantiator(type);
+        }
+
+        if (isVisible(type))
+        {
+            try
+            {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                return (Callable<?>) LambdaMetafactory.metafactory(lookup, "call",
+                    MethodType.methodType(Callable.class), MethodType.methodType(Object.class),
+                    constructor, MethodType.methodType(type)).getTarget().invokeExact();
+            }
+            catch (Throwable t)
+            {
+                // fall back to the method handle
+            }
+        }
+
+        final MethodHandle handle = constructor.asType(MethodType.methodType(Object.class));
+        return new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                try
+                {
+                    return handle.invokeExact();
+                }
+                catch (Exception | Error x)
+                {
+                    throw x;
+                }
+                catch (Throwable t)
+                {
+                    throw new UndeclaredThrowableException(t);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a reflective instantiator, which reports the reason why
+     * the class cannot be instantiated on every call.
+     *
+     * @param type the class.
+     * @return the instantiator.
+     */
+    private static Callable<?> reflectiveInstantiator(Class<?> type)
+    {
+        final Constructor<?> constructor;
+        try
+        {
+            constructor = type.getDeclaredConstructor();
+        }
+        catch (final NoSuchMethodException x)
+        {
+            return failingInstantiator(type.getName() + " has no default constructor");
+        }
+
+        return new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                return constructor.newInstance();
+            }
+        };
+    }
+
+    /**
+     * Creates an instantiator which throws an {@link InstantiationException}
+     * on every call.
+     *
+     * @param message the message of the exception.
+     * @return the instantiator.
+     */
+    private static Callable<?> failingInstantiator(final String message)
+    {
+        return new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                throw new InstantiationException(message);
+            }
+        };
+    }
+
+    /**
+     * Tests if a class can be resolved by name from the class loader of
+     * this class, which is required for a generated instantiator.
+     *
+     * @param type the class.
+     * @return true if the class is visible.
+     */
+    private static boolean isVisible(Class<?> type)
+    {
+        if (type.isHidden() || type.isArray() || type.isPrimitive())
+        {
+            return false;
+        }
+        try
+        {
+            return Class.forName(type.getName(), false, Instantiator.class.getClassLoader()) == type;
+        }
+        catch (ClassNotFoundException | LinkageError x)
+        {
+            return false;
+        }
+    }
+}
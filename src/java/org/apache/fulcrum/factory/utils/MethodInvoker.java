@@ -0,0 +1,154 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * A resolved static factory method bound to a method handle taking the
+ * method parameters as an object array. Once created, an invoker performs
+ * no further lookups or access checks.
+ *
+ * @param <T> the type of the created objects
+ *
+ * @version $Id$
+ */
+public final class MethodInvoker<T>
+{
+    /**
+     * An empty parameter array.
+     */
+    private static final Object[] NO_PARAMS = new Object[0];
+
+    /**
+     * The handle of type (Object[])Object, or null if not accessible.
+     */
+    private final MethodHandle handle;
+
+    /**
+     * The method, used reflectively if no handle is available.
+     */
+    private final Method method;
+
+    /**
+     * The parameter types of the method.
+     */
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * Creates an invoker for a static method.
+     *
+     * @param method the method.
+     */
+    private MethodInvoker(Method method)
+    {
+        this.method = method;
+        this.parameterTypes = method.getParameterTypes();
+
+        MethodHandle mh;
+        try
+        {
+            mh = MethodHandles.publicLookup().unreflect(method)
+                .asSpreader(Object[].class, parameterTypes.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        }
+        catch (IllegalAccessException x)
+        {
+            // Not publicly accessible, fall back to reflection
+            mh = null;
+        }
+        this.handle = mh;
+    }
+
+    /**
+     * Creates an invoker for a static method.
+     *
+     * @param <T> the type of the created objects
+     * @param method the method.
+     * @return the invoker.
+     * @throws IllegalArgumentException if the method is not static.
+     */
+    public static <T> MethodInvoker<T> of(Method method)
+    {
+        if (!Modifier.isStatic(method.getModifiers()))
+        {
+            throw new IllegalArgumentException("Method " + method + " is not static");
+        }
+        return new MethodInvoker<T>(method);
+    }
+
+    /**
+     * Gets the parameter types of the method.
+     *
+     * @return the parameter types, not to be modified.
+     */
+    public Class<?>[] getParameterTypes()
+    {
+        return parameterTypes;
+    }
+
+    /**
+     * Gets the method.
+     *
+     * @return the method.
+     */
+    public Method getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * Invokes the method.
+     *
+     * @param params the parameters of the method, may be null for none.
+     * @return the object returned by the method.
+     * @throws Exception if the method fails or the parameters do not match.
+     */
+    @SuppressWarnings("unchecked")
+    public T invoke(Object[] params) throws Exception
+    {
+        if (params == null)
+        {
+            params = NO_PARAMS;
+        }
+        if (handle == null)
+        {
+            return (T) method.invoke(null, params);
+        }
+
+        try
+        {
+            return (T) (Object) handle.invokeExact(params);
+        }
+        catch (Exception | Error x)
+        {
+            throw x;
+        }
+        catch (Throwable t)
+        {
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of class names that recently could not be found
+ * in any class loader. Entries expire after a configured time to live,
+ * so classes that become available later are picked up again.
+ *
+ * @version $Id$
+ */
+public class MissingClassCache
+{
+    /**
+     * The default maximum number of cached class names.
+     */
+    public static final int DEFAULT_SIZE = 256;
+
+    /**
+     * The default time to live of an entry in milliseconds.
+     */
+    public static final long DEFAULT_TTL = 60000L;
+
+    /**
+     * The maximum number of cached class names.
+     */
+    private final int maxSize;
+
+    /**
+     * The time to live of an entry in nanoseconds.
+     */
+    private final long ttl;
+
+    /**
+     * Expiry times of missing classes.
+     */
+    private final ConcurrentHashMap<String, Long> missing = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Lookups answered from the cache.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Creates a cache with the default size and time to live.
+     */
+    public MissingClassCache()
+    {
+        this(DEFAULT_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * Creates a cache with the given size and time to live.
+     *
+     * @param maxSize the maximum number of cached class names.
+     * @param ttl the time to live of an entry in milliseconds.
+     */
+    public MissingClassCache(int maxSize, long ttl)
+    {
+        this.maxSize = maxSize;
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+    }
+
+    /**
+     * Tests if a class is known to be missing.
+     *
+     * @param className the name of the class.
+     * @return true if the class was not found recently.
+     */
+    public boolean isMissing(String className)
+    {
+        Long expiry = missing.get(className);
+        if (expiry == null)
+        {
+            return false;
+        }
+        if (System.nanoTime() - expiry.longValue() < 0)
+        {
+            hits.increment();
+            return true;
+        }
+
+        missing.remove(className, expiry);
+        return false;
+    }
+
+    /**
+     * Records a missing class.
+     *
+     * @param className the name of the class.
+     */
+    public void put(String className)
+    {
+        if (maxSize <= 0)
+        {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (missing.size() >= maxSize)
+        {
+            // Drop expired entries, then an arbitrary one if still full
+            for (Iterator<Map.Entry<String, Long>> it = missing.entrySet().iterator(); it.hasNext();)
+            {
+                if (now - it.next().getValue().longValue() >= 0)
+                {
+                    it.remove();
+                }
+            }
+            Iterator<String> it = missing.keySet().iterator();
+            if (missing.size() >= maxSize && it.hasNext())
+            {
+                it.next();
+                it.remove();
+            }
+        }
+
+        missing.put(className, Long.valueOf(now + ttl));
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear()
+    {
+        missing.clear();
+    }
+
+    /**
+     * Gets the number of cached class names.
+     *
+     * @return the number of entries, including expired ones not yet purged.
+     */
+    public int size()
+    {
+        return missing.size();
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return the hit count.
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Creates the exception thrown for a class known to be missing.
+     * The exception carries no stack trace, as it is cheap by intent.
+     *
+     * @param className the name of the class.
+     * @return the exception.
+     */
+    public ClassNotFoundException newException(String className)
+    {
+        return new MissingClassException(className);
+    }
+
+    /**
+     * A class not found exception without a stack trace.
+     */
+    private static final class MissingClassException extends ClassNotFoundException
+    {
+        /**
+         * Serial number
+         */
+        private static final long serialVersionUID = -2913530471206404632L;
+
+        /**
+         * @param className the name of the missing class
+         */
+        MissingClassException(String className)
+        {
+            super(className);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    }
+}
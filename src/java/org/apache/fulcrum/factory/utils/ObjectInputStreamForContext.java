@@ -32,11 +32,22 @@ import java.io.ObjectStreamClass;
  */
 public class ObjectInputStreamForContext extends ObjectInputStream
 {
+    /**
+     * Classes resolved by all streams not given a cache of their own.
+     * Class loaders are held weakly.
+     */
+    private static final ClassCache SHARED_CLASS_CACHE = new ClassCache();
+
     /**
      * The class loader of the context.
      */
     private ClassLoader classLoader;
 
+    /**
+     * The cache of resolved classes, or null.
+     */
+    private ClassCache classCache;
+
     /**
      * Required to make satisfy the proxy methods
      * 
@@ -49,6 +60,7 @@ public class ObjectInputStreamForContext extends ObjectInputStream
 
     /**
      * This method will construct a new object stream for a context.
+     * Classes are resolved through a cache shared by all streams.
      *
      * @param in the serialized input stream.
      * @param loader the class loader of the context.
@@ -57,9 +69,27 @@ public class ObjectInputStreamForContext extends ObjectInputStream
     public  ObjectInputStreamForContext(InputStream in,
                                         ClassLoader loader)
                                         throws IOException
+    {
+        this(in, loader, SHARED_CLASS_CACHE);
+    }
+
+    /**
+     * This method will construct a new object stream for a context
+     * resolving classes through a given cache.
+     *
+     * @param in the serialized input stream.
+     * @param loader the class loader of the context.
+     * @param cache the cache of resolved classes, null to resolve without caching.
+     * @throws IOException on errors.
+     */
+    public  ObjectInputStreamForContext(InputStream in,
+                                        ClassLoader loader,
+                                        ClassCache cache)
+                                        throws IOException
     {
         super(in);
         classLoader = loader;
+        classCache = cache;
     }
 
     /**
@@ -74,7 +104,32 @@ public class ObjectInputStreamForContext extends ObjectInputStream
                                  throws IOException,
                                  ClassNotFoundException
     {
-        return classLoader == null ?
-            super.resolveClass(v) : classLoader.loadClass(v.getName());
+        if (classLoader == null)
+        {
+            return super.resolveClass(v);
+        }
+        if (classCache == null)
+        {
+            return Class.forName(v.getName(), false, classLoader);
+        }
+
+        Class<?> clazz = classCache.get(classLoader, v.getName());
+        if (clazz == null)
+        {
+            clazz = Class.forName(v.getName(), false, classLoader);
+            classCache.put(classLoader, v.getName(), clazz);
+        }
+        return clazz;
+    }
+
+    /**
+     * Gets the cache of resolved classes shared by streams not given
+     * a cache of their own.
+     *
+     * @return the shared cache.
+     */
+    public static ClassCache getSharedClassCache()
+    {
+        return SHARED_CLASS_CACHE;
     }
 }
@@ -0,0 +1,250 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.fulcrum.factory.Resettable;
+
+/**
+ * A pool of reusable instances of a class.
+ *
+ * <p>Instances are kept in lock-free queues striped by thread, so
+ * threads returning and borrowing instances mostly touch their own
+ * stripe. A borrow falls back to the other stripes if its own one is
+ * empty. All stripes together hold at most the maximum pool size.</p>
+ *
+ * <p>No instances are kept in thread locals, so clearing the pool
+ * releases all of them, whichever thread returned them.</p>
+ *
+ * @param <T> the type of the pooled objects
+ *
+ * @version $Id$
+ */
+public class ObjectPool<T>
+{
+    /**
+     * The maximum number of stripes.
+     */
+    private static final int MAX_STRIPES = 64;
+
+    /**
+     * The maximum number of pooled instances.
+     */
+    private final int maxSize;
+
+    /**
+     * The stripes, their number is a power of two.
+     */
+    private final ConcurrentLinkedQueue<T>[] stripes;
+
+    /**
+     * The number of pooled instances in all stripes.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Borrows served from the pool.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Borrows that found the pool empty.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Returned instances discarded because the pool was full or the reset failed.
+     */
+    private final LongAdder discards = new LongAdder();
+
+    /**
+     * Creates a pool with a stripe per available processor.
+     *
+     * @param maxSize the maximum number of pooled instances.
+     */
+    public ObjectPool(int maxSize)
+    {
+        this(maxSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxSize the maximum number of pooled instances.
+     * @param stripes the number of stripes, rounded up to a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public ObjectPool(int maxSize, int stripes)
+    {
+        this.maxSize = maxSize;
+        int count = 1;
+        while (count < stripes && count < MAX_STRIPES)
+        {
+            count <<= 1;
+        }
+        this.stripes = new ConcurrentLinkedQueue[count];
+        for (int i = 0; i < count; i++)
+        {
+            this.stripes[i] = new ConcurrentLinkedQueue<T>();
+        }
+    }
+
+    /**
+     * Takes an instance from the pool.
+     *
+     * @return the instance or null if the pool is empty.
+     */
+    public T poll()
+    {
+        if (size.get() > 0)
+        {
+            int home = stripe();
+            for (int i = 0; i < stripes.length; i++)
+            {
+                T instance = stripes[(home + i) & (stripes.length - 1)].poll();
+                if (instance != null)
+                {
+                    size.decrementAndGet();
+                    hits.increment();
+                    return instance;
+                }
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Returns an instance to the pool. Instances implementing
+     * {@link Resettable} are reset first.
+     *
+     * @param instance the instance.
+     * @return true if the instance was pooled, false if it was discarded.
+     */
+    public boolean offer(T instance)
+    {
+        if (instance == null)
+        {
+            return false;
+        }
+
+        if (instance instanceof Resettable)
+        {
+            try
+            {
+                ((Resettable) instance).reset();
+            }
+            catch (RuntimeException x)
+            {
+                discards.increment();
+                return false;
+            }
+        }
+
+        if (size.incrementAndGet() > maxSize)
+        {
+            size.decrementAndGet();
+            discards.increment();
+            return false;
+        }
+
+        stripes[stripe()].offer(instance);
+        return true;
+    }
+
+    /**
+     * Removes all instances from the pool.
+     */
+    public void clear()
+    {
+        for (ConcurrentLinkedQueue<T> stripe : stripes)
+        {
+            while (stripe.poll() != null)
+            {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Gets the maximum number of pooled instances.
+     *
+     * @return the maximum size.
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Gets the number of pooled instances.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+        return size.get();
+    }
+
+    /**
+     * Gets the number of borrows served from the pool.
+     *
+     * @return the hit count.
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of borrows that found the pool empty.
+     *
+     * @return the miss count.
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of returned instances that were discarded.
+     *
+     * @return the discard count.
+     */
+    public long getDiscards()
+    {
+        return discards.sum();
+    }
+
+    /**
+     * Gets the stripe of the current thread.
+     *
+     * @return the index of the stripe.
+     */
+    private int stripe()
+    {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 32)) & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,340 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded ring buffer of instances of a class created ahead of time.
+ *
+ * <p>Requests take instances from the buffer. Once the number of buffered
+ * instances drops to the low-water mark, one refill at a time may be
+ * started to create instances until the buffer is full again.</p>
+ *
+ * <p>After a refill failed, no refill is started until a backoff has
+ * elapsed, which doubles with every consecutive failure up to a minute,
+ * so a class which cannot be instantiated is not retried on every
+ * request.</p>
+ *
+ * @param <T> the type of the buffered objects
+ *
+ * @version $Id$
+ */
+public class PrefetchBuffer<T>
+{
+    /**
+     * The default number of buffered instances.
+     */
+    public static final int DEFAULT_DEPTH = 16;
+
+    /**
+     * The default backoff after a failed refill in milliseconds.
+     */
+    public static final long DEFAULT_BACKOFF = 100;
+
+    /**
+     * The maximum backoff after consecutive failed refills in milliseconds.
+     */
+    public static final long MAX_BACKOFF = 60000;
+
+    /**
+     * The buffered instances.
+     */
+    private final ArrayBlockingQueue<T> buffer;
+
+    /**
+     * The maximum number of buffered instances.
+     */
+    private final int depth;
+
+    /**
+     * The number of buffered instances at which to refill.
+     */
+    private final int lowWater;
+
+    /**
+     * The backoff after a single failed refill in nanoseconds.
+     */
+    private final long backoff;
+
+    /**
+     * The number of refills failed since the last successful one.
+     */
+    private volatile int consecutiveFailures;
+
+    /**
+     * The time in nanoseconds before which no refill is started after a failure.
+     */
+    private volatile long retryAt;
+
+    /**
+     * Whether a refill is running.
+     */
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * Requests served from the buffer.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Requests that found the buffer empty.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Instances created by refills.
+     */
+    private final LongAdder created = new LongAdder();
+
+    /**
+     * Refills stopped by a failed instantiation.
+     */
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Creates a buffer.
+     *
+     * @param depth the maximum number of buffered instances.
+     * @param lowWater the number of buffered instances at which to refill,
+     * less than the depth.
+     * @throws IllegalArgumentException if the depth is not positive or the
+     * low-water mark is not below it.
+     */
+    public PrefetchBuffer(int depth, int lowWater)
+    {
+        this(depth, lowWater, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * Creates a buffer with a given backoff after failed refills.
+     *
+     * @param depth the maximum number of buffered instances.
+     * @param lowWater the number of buffered instances at which to refill,
+     * less than the depth.
+     * @param backoff the backoff after a single failed refill in milliseconds,
+     * doubled for every further consecutive failure.
+     * @throws IllegalArgumentException if the depth is not positive, the
+     * low-water mark is not below it or the backoff is negative.
+     */
+    public PrefetchBuffer(int depth, int lowWater, long backoff)
+    {
+        if (depth < 1 || lowWater < 0 || lowWater >= depth)
+        {
+            throw new IllegalArgumentException("Invalid depth " + depth + " and low-water mark " + lowWater);
+        }
+        if (backoff < 0)
+        {
+            throw new IllegalArgumentException("Invalid backoff " + backoff);
+        }
+        this.buffer = new ArrayBlockingQueue<T>(depth);
+        this.depth = depth;
+        this.lowWater = lowWater;
+        this.backoff = TimeUnit.MILLISECONDS.toNanos(backoff);
+    }
+
+    /**
+     * Takes an instance from the buffer.
+     *
+     * @return the instance or null if the buffer is empty.
+     */
+    public T poll()
+    {
+        T instance = buffer.poll();
+        if (instance != null)
+        {
+            hits.increment();
+        }
+        else
+        {
+            misses.increment();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts a refill if the buffer is at or below the low-water mark,
+     * no refill is running and the backoff after failed refills has
+     * elapsed. A started refill must be followed by
+     * {@link #refill(Callable)} or {@link #cancelRefill()}.
+     *
+     * @return true if the caller is to run the refill.
+     */
+    public boolean startRefill()
+    {
+        if (buffer.size() > lowWater)
+        {
+            return false;
+        }
+        if (consecutiveFailures > 0 && System.nanoTime() - retryAt < 0)
+        {
+            return false;
+        }
+        return refilling.compareAndSet(false, true);
+    }
+
+    /**
+     * Cancels a started refill which is not going to run, allowing
+     * the next one to start.
+     */
+    public void cancelRefill()
+    {
+        refilling.set(false);
+    }
+
+    /**
+     * Runs a started refill, creating instances until the buffer is full.
+     *
+     * @param creator the creator of instances.
+     * @return the number of created instances.
+     * @throws Exception if an instantiation fails, the refill stops then.
+     */
+    public int refill(Callable<? extends T> creator) throws Exception
+    {
+        int count = 0;
+        try
+        {
+            while (buffer.remainingCapacity() > 0 && !Thread.currentThread().isInterrupted())
+            {
+                T instance = creator.call();
+                created.increment();
+                if (!buffer.offer(instance))
+                {
+                    break;
+                }
+                count++;
+            }
+            consecutiveFailures = 0;
+            return count;
+        }
+        catch (Exception | Error x)
+        {
+            failures.increment();
+            int failed = consecutiveFailures + 1;
+            long delay = Math.min(backoff << Math.min(failed - 1, 20), TimeUnit.MILLISECONDS.toNanos(MAX_BACKOFF));
+            retryAt = System.nanoTime() + delay;
+            consecutiveFailures = failed;
+            throw x;
+        }
+        finally
+        {
+            refilling.set(false);
+        }
+    }
+
+    /**
+     * Removes all buffered instances.
+     */
+    public void clear()
+    {
+        buffer.clear();
+    }
+
+    /**
+     * Gets the maximum number of buffered instances.
+     *
+     * @return the depth.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Gets the number of buffered instances at which to refill.
+     *
+     * @return the low-water mark.
+     */
+    public int getLowWater()
+    {
+        return lowWater;
+    }
+
+    /**
+     * Gets the number of buffered instances.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+        return buffer.size();
+    }
+
+    /**
+     * Gets the number of requests served from the buffer.
+     *
+     * @return the hit count.
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of requests that found the buffer empty.
+     *
+     * @return the miss count.
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of instances created by refills.
+     *
+     * @return the created count.
+     */
+    public long getCreated()
+    {
+        return created.sum();
+    }
+
+    /**
+     * Gets the number of refills stopped by a failed instantiation.
+     *
+     * @return the failure count.
+     */
+    public long getFailures()
+    {
+        return failures.sum();
+    }
+
+    /**
+     * Gets the number of refills failed since the last successful one.
+     *
+     * @return the consecutive failure count.
+     */
+    public int getConsecutiveFailures()
+    {
+        return consecutiveFailures;
+    }
+
+    @Override
+    public String toString()
+    {
+        return size() + "/" + depth + " buffered, " + getHits() + " hits, " + getMisses() + " misses, "
+            + getFailures() + " failures";
+    }
+}
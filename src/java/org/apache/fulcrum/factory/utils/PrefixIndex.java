@@ -0,0 +1,111 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable index of values by name prefix, finding the longest
+ * prefix of a name with a binary search over the sorted prefixes.
+ *
+ * <p>Each prefix links to the longest other prefix it starts with. The
+ * prefixes sorted between a matching prefix and the name all start with
+ * that prefix, so the longest match is found by following the links
+ * from the greatest prefix not after the name.</p>
+ *
+ * @param <V> the type of the values
+ *
+ * @version $Id$
+ */
+public final class PrefixIndex<V>
+{
+    /**
+     * The sorted prefixes.
+     */
+    private final String[] prefixes;
+
+    /**
+     * The values of the prefixes.
+     */
+    private final Object[] values;
+
+    /**
+     * The index of the longest other prefix each prefix starts with, or -1.
+     */
+    private final int[] parents;
+
+    /**
+     * Creates an index.
+     *
+     * @param entries the values by prefix.
+     */
+    public PrefixIndex(Map<String, ? extends V> entries)
+    {
+        TreeMap<String, V> sorted = new TreeMap<String, V>(entries);
+        prefixes = sorted.keySet().toArray(new String[sorted.size()]);
+        values = sorted.values().toArray();
+        parents = new int[prefixes.length];
+
+        int[] stack = new int[prefixes.length];
+        int depth = 0;
+        for (int i = 0; i < prefixes.length; i++)
+        {
+            while (depth > 0 && !prefixes[i].startsWith(prefixes[stack[depth - 1]]))
+            {
+                depth--;
+            }
+            parents[i] = depth > 0 ? stack[depth - 1] : -1;
+            stack[depth++] = i;
+        }
+    }
+
+    /**
+     * Gets the value of the longest prefix of a name.
+     *
+     * @param name the name.
+     * @return the value, or null if no prefix matches.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String name)
+    {
+        int i = Arrays.binarySearch(prefixes, name);
+        if (i < 0)
+        {
+            i = -i - 2;
+        }
+        while (i >= 0 && !name.startsWith(prefixes[i]))
+        {
+            i = parents[i];
+        }
+        return i >= 0 ? (V) values[i] : null;
+    }
+
+    /**
+     * Gets the number of prefixes.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+        return prefixes.length;
+    }
+}
@@ -0,0 +1,173 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.SoftReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.fulcrum.factory.ContextSwitchStrategy;
+import org.apache.fulcrum.factory.FactoryException;
+
+/**
+ * The default context switch strategy, which copies objects into the
+ * new context by Java serialization.
+ *
+ * <p>Immutable JDK types are shared as is. Serialization goes through a
+ * byte array reused per thread, and classes resolved during deserialization
+ * are cached per target class loader by {@link ObjectInputStreamForContext}.</p>
+ *
+ * @version $Id$
+ */
+public class SerializationContextSwitchStrategy implements ContextSwitchStrategy
+{
+    /**
+     * The initial size of a buffer.
+     */
+    private static final int INITIAL_BUFFER = 1024;
+
+    /**
+     * Buffers larger than this are not kept for reuse.
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    /**
+     * Immutable JDK classes which never need to be switched.
+     */
+    private static final Set<Class<?>> IMMUTABLE_CLASSES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+        String.class, Boolean.class, Character.class, Byte.class, Short.class,
+        Integer.class, Long.class, Float.class, Double.class,
+        BigInteger.class, BigDecimal.class));
+
+    /**
+     * The buffer array of the current thread. Only JDK types are kept in
+     * the thread local, so threads of a container pool outliving the
+     * component do not pin its class loader.
+     */
+    private final ThreadLocal<SoftReference<byte[]>> buffers = new ThreadLocal<SoftReference<byte[]>>();
+
+    /**
+     * Switches an object into the context of a class loader.
+     *
+     * @param object the object to switch.
+     * @param loader the class loader of the new context.
+     * @return the switched object, or the object itself if it is immutable.
+     * @throws FactoryException if the object cannot be serialized or deserialized.
+     */
+    @Override
+    public Object switchContext(Object object, ClassLoader loader)
+        throws FactoryException
+    {
+        if (object == null || isImmutable(object.getClass()))
+        {
+            return object;
+        }
+
+        SoftReference<byte[]> retained = buffers.get();
+        byte[] array = retained != null ? retained.get() : null;
+        if (array != null)
+        {
+            /* Taken while in use by this call. */
+            buffers.remove();
+        }
+        Buffer buffer = new Buffer(array != null ? array : new byte[INITIAL_BUFFER]);
+        try
+        {
+            ObjectOutputStream out = new ObjectOutputStream(buffer);
+            out.writeObject(object);
+            out.flush();
+
+            ByteArrayInputStream bin = buffer.toInputStream();
+            try (ObjectInputStreamForContext in = new ObjectInputStreamForContext(bin, loader))
+            {
+                return in.readObject();
+            }
+        }
+        catch (Exception x)
+        {
+            throw new FactoryException("Switching " + object.getClass().getName()
+                + " to the context of " + loader + " failed", x);
+        }
+        finally
+        {
+            byte[] released = buffer.array();
+            if (released.length <= MAX_RETAINED_BUFFER)
+            {
+                buffers.set(new SoftReference<byte[]>(released));
+            }
+        }
+    }
+
+    /**
+     * Tests if instances of a class are immutable JDK values, which are
+     * shared by all class loaders.
+     *
+     * @param clazz the class.
+     * @return true if instances can be used as is in any context.
+     */
+    protected boolean isImmutable(Class<?> clazz)
+    {
+        if (clazz.getClassLoader() != null)
+        {
+            return false;
+        }
+        return IMMUTABLE_CLASSES.contains(clazz)
+            || clazz.isEnum()
+            || "java.time".equals(clazz.getPackageName())
+            || "java.time.zone".equals(clazz.getPackageName());
+    }
+
+    /**
+     * An output buffer writing to a given array.
+     */
+    private static final class Buffer extends ByteArrayOutputStream
+    {
+        /**
+         * @param array the initial array of the buffer
+         */
+        Buffer(byte[] array)
+        {
+            super(0);
+            buf = array;
+        }
+
+        /**
+         * @return a stream reading the buffer contents without copying them
+         */
+        ByteArrayInputStream toInputStream()
+        {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        /**
+         * @return the current array of the buffer, which may have grown
+         */
+        byte[] array()
+        {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A parsed type name of a signature. Accepted forms are
+ * <ul>
+ * <li>primitive and class names: <code>int</code>, <code>java.lang.String</code></li>
+ * <li>source array and varargs forms: <code>int[]</code>, <code>java.lang.String[][]</code>,
+ *     <code>java.lang.Object...</code></li>
+ * <li>binary array names and descriptors: <code>[I</code>, <code>[Ljava.lang.String;</code>,
+ *     <code>Ljava/lang/String;</code></li>
+ * <li>nested classes in binary or source form: <code>java.util.Map$Entry</code>,
+ *     <code>java.util.Map.Entry</code></li>
+ * </ul>
+ *
+ * <p>Parsed names are interned, so parsing the same name again is a
+ * map lookup.</p>
+ *
+ * @version $Id$
+ */
+public final class TypeName
+{
+    /**
+     * Resolves class names to classes.
+     */
+    public interface ClassResolver
+    {
+        /**
+         * Resolves a binary class name.
+         *
+         * @param className the class name.
+         * @return the class.
+         * @throws ClassNotFoundException if the class is not found.
+         */
+        Class<?> resolve(String className) throws ClassNotFoundException;
+    }
+
+    /**
+     * The maximum number of interned type names.
+     */
+    private static final int MAX_INTERNED = 4096;
+
+    /**
+     * The interned type names.
+     */
+    private static final ConcurrentHashMap<String, TypeName> INTERNED = new ConcurrentHashMap<String, TypeName>();
+
+    /**
+     * Primitive classes by name.
+     */
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>(16);
+
+    /**
+     * Primitive type names by descriptor.
+     */
+    private static final Map<Character, String> DESCRIPTORS = new HashMap<Character, String>(16);
+
+    static
+    {
+        for (Class<?> type : new Class<?>[] { Boolean.TYPE, Character.TYPE, Byte.TYPE, Short.TYPE,
+            Integer.TYPE, Long.TYPE, Float.TYPE, Double.TYPE })
+        {
+            PRIMITIVES.put(type.getName(), type);
+        }
+        DESCRIPTORS.put('Z', "boolean");
+        DESCRIPTORS.put('C', "char");
+        DESCRIPTORS.put('B', "byte");
+        DESCRIPTORS.put('S', "short");
+        DESCRIPTORS.put('I', "int");
+        DESCRIPTORS.put('J', "long");
+        DESCRIPTORS.put('F', "float");
+        DESCRIPTORS.put('D', "double");
+    }
+
+    /**
+     * The name as given.
+     */
+    private final String name;
+
+    /**
+     * The binary name of the element type.
+     */
+    private final String elementName;
+
+    /**
+     * The number of array dimensions.
+     */
+    private final int dimensions;
+
+    /**
+     * The primitive element type, null for classes.
+     */
+    private final Class<?> primitive;
+
+    /**
+     * Constructor
+     *
+     * @param name the name as given
+     * @param elementName the binary name of the element type
+     * @param dimensions the number of array dimensions
+     */
+    private TypeName(String name, String elementName, int dimensions)
+    {
+        this.name = name;
+        this.elementName = elementName;
+        this.dimensions = dimensions;
+        this.primitive = PRIMITIVES.get(elementName);
+    }
+
+    /**
+     * Parses a type name.
+     *
+     * @param name the type name.
+     * @return the parsed type name.
+     * @throws IllegalArgumentException if the name is malformed.
+     */
+    public static TypeName parse(String name)
+    {
+        TypeName type = INTERNED.get(name);
+        if (type == null)
+        {
+            type = doParse(name);
+            if (INTERNED.size() < MAX_INTERNED)
+            {
+                INTERNED.putIfAbsent(name, type);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Parses a type name without looking up interned names.
+     *
+     * @param name the type name.
+     * @return the parsed type name.
+     */
+    private static TypeName doParse(String name)
+    {
+        String element = name.trim();
+        int dimensions = 0;
+
+        if (element.endsWith("..."))
+        {
+            element = element.substring(0, element.length() - 3).trim();
+            dimensions++;
+        }
+        while (element.endsWith("[]"))
+        {
+            element = element.substring(0, element.length() - 2).trim();
+            dimensions++;
+        }
+        while (element.startsWith("["))
+        {
+            element = element.substring(1);
+            dimensions++;
+            if (element.length() == 1)
+            {
+                String primitive = DESCRIPTORS.get(Character.valueOf(element.charAt(0)));
+                if (primitive == null)
+                {
+                    throw new IllegalArgumentException("Invalid type descriptor " + name);
+                }
+                element = primitive;
+            }
+        }
+        if (element.startsWith("L") && element.endsWith(";"))
+        {
+            element = element.substring(1, element.length() - 1);
+        }
+        element = element.replace('/', '.');
+
+        if (element.isEmpty() || element.startsWith(".") || element.endsWith(".") || element.indexOf(' ') >= 0)
+        {
+            throw new IllegalArgumentException("Invalid type name " + name);
+        }
+        return new TypeName(name, element, dimensions);
+    }
+
+    /**
+     * Gets the name as given.
+     *
+     * @return the name.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Gets the binary name of the element type.
+     *
+     * @return the element name.
+     */
+    public String getElementName()
+    {
+        return elementName;
+    }
+
+    /**
+     * Gets the number of array dimensions.
+     *
+     * @return the dimensions, 0 for non-array types.
+     */
+    public int getDimensions()
+    {
+        return dimensions;
+    }
+
+    /**
+     * Resolves the type. Element classes not found by their name are
+     * looked up as nested classes, replacing dots from the right with
+     * <code>$</code>.
+     *
+     * @param resolver the resolver of class names.
+     * @return the type.
+     * @throws ClassNotFoundException if the element class is not found.
+     */
+    public Class<?> resolve(ClassResolver resolver) throws ClassNotFoundException
+    {
+        Class<?> type = primitive != null ? primitive : resolveElement(resolver);
+        for (int i = 0; i < dimensions; i++)
+        {
+            type = type.arrayType();
+        }
+        return type;
+    }
+
+    /**
+     * Resolves the element class.
+     *
+     * @param resolver the resolver of class names.
+     * @return the element class.
+     * @throws ClassNotFoundException if the class is not found.
+     */
+    private Class<?> resolveElement(ClassResolver resolver) throws ClassNotFoundException
+    {
+        try
+        {
+            return resolver.resolve(elementName);
+        }
+        catch (ClassNotFoundException x)
+        {
+            char[] nested = elementName.toCharArray();
+            for (int i = nested.length - 1; i > 0; i--)
+            {
+                if (nested[i] == '.')
+                {
+                    nested[i] = '$';
+                    try
+                    {
+                        return resolver.resolve(new String(nested));
+                    }
+                    catch (ClassNotFoundException xx)
+                    {
+                        // continue with the enclosing name
+                    }
+                }
+            }
+            throw x;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
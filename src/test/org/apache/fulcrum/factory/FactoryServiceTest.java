@@ -23,10 +23,53 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 
 
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.avalon.framework.configuration.ConfigurationException;
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.fulcrum.factory.utils.FactoryEvents;
+import org.apache.fulcrum.factory.utils.PrefetchBuffer;
 import org.apache.fulcrum.testcontainer.BaseUnit5Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -150,4 +193,1161 @@ public class FactoryServiceTest extends BaseUnit5Test
         assertEquals(1, results.length);
         assertTrue(results[0].equals(Integer.class));
     }
+
+    /**
+     * Signatures with array, varargs and nested type names
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetSignatureTypeNames() throws Exception
+    {
+        Class<?>[] results = factoryService.getSignature(ArrayList.class, null,
+            new String[] { "[C", "int[]", "java.lang.String...", "java.util.Map.Entry" });
+        assertEquals(char[].class, results[0]);
+        assertEquals(int[].class, results[1]);
+        assertEquals(String[].class, results[2]);
+        assertEquals(java.util.Map.Entry.class, results[3]);
+
+        String object = factoryService.getInstance("java.lang.String",
+            new Object[] { new char[] { 'o', 'k' } }, new String[] { "char[]" });
+        assertEquals("ok", object);
+
+        assertThrows(ClassNotFoundException.class,
+            () -> factoryService.getSignature(ArrayList.class, null, new String[] { "[Q" }));
+    }
+
+    /**
+     * Signatures resolved by a removed class loader are not kept
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetSignatureRemovedClassLoader() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("factory");
+        DefaultConfiguration classCache = new DefaultConfiguration("class-cache");
+        classCache.setAttribute("size", "0");
+        conf.addChild(classCache);
+        DefaultFactoryService service = new DefaultFactoryService();
+        service.configure(conf);
+        service.initialize();
+
+        try (URLClassLoader isolated = new URLClassLoader(
+            new URL[] { FailingBean.class.getProtectionDomain().getCodeSource().getLocation() }, null))
+        {
+            Class<?> plugin = isolated.loadClass(FailingBean.class.getName());
+            PackageLoader loader = new PackageLoader("plugin.", plugin);
+            service.addClassLoader(loader);
+            String signature[] = new String[] { "plugin.Foo" };
+            assertSame(plugin, service.getSignature(StringBuilder.class, null, signature)[0]);
+
+            assertTrue(service.removeClassLoader(loader));
+            assertThrows(ClassNotFoundException.class,
+                () -> service.getSignature(StringBuilder.class, null, signature));
+        }
+        service.dispose();
+    }
+
+    /**
+     * Repeated lookups of a missing class fail consistently
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetInstanceMissingClass() throws Exception
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            FactoryException x = assertThrows(FactoryException.class,
+                () -> factoryService.getInstance("org.apache.fulcrum.factory.NoSuchClass"));
+            assertTrue(x.getCause() instanceof ClassNotFoundException);
+            assertEquals("org.apache.fulcrum.factory.NoSuchClass", x.getCause().getMessage());
+        }
+
+        for (int i = 0; i < 3; i++)
+        {
+            assertFalse(factoryService.isAvailable("org.apache.fulcrum.factory.NoSuchClass"));
+        }
+        assertTrue(factoryService.isAvailable("java.util.ArrayList"));
+        assertTrue(factoryService.isAvailable("org.apache.fulcrum.factory.SelfProduct"));
+    }
+
+    /**
+     * Repeated construction with parameters uses the same constructor
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetInstanceRepeatedSignature() throws Exception
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            StringBuilder object = factoryService.getInstance("java.lang.StringBuilder",
+                new Object[] { Integer.valueOf(64) }, new String[] { "int" });
+            assertEquals(64, object.capacity());
+
+            object = factoryService.getInstance("java.lang.StringBuilder",
+                new Object[] { "value" + i }, new String[] { "java.lang.CharSequence" });
+            assertEquals("value" + i, object.toString());
+        }
+
+        assertThrows(FactoryException.class, () -> factoryService.getInstance("java.lang.StringBuilder",
+            new Object[] { "wrong" }, new String[] { "int" }));
+    }
+
+    /**
+     * Without a signature the constructor is selected by the parameter types
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetInstanceWithoutSignature() throws Exception
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            StringBuilder object = factoryService.getInstance("java.lang.StringBuilder",
+                new Object[] { Integer.valueOf(48) }, null);
+            assertEquals(48, object.capacity());
+
+            object = factoryService.getInstance("java.lang.StringBuilder",
+                new Object[] { "text" }, null);
+            assertEquals("text", object.toString());
+        }
+
+        assertThrows(FactoryException.class, () -> factoryService.getInstance("java.lang.StringBuilder",
+            new Object[] { new java.util.Date() }, null));
+    }
+
+    /**
+     * Class to test for Object getInstanceBySignature(String, Object[], Signature) and getInstanceByTypes
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetInstanceTypedSignature() throws Exception
+    {
+        Signature signature = Signature.of(CharSequence.class);
+        assertEquals("(java.lang.CharSequence)", signature.toString());
+        assertEquals(signature, Signature.of(CharSequence.class));
+        for (int i = 0; i < 3; i++)
+        {
+            StringBuilder object = factoryService.getInstanceBySignature("java.lang.StringBuilder",
+                new Object[] { "value" + i }, signature);
+            assertEquals("value" + i, object.toString());
+        }
+
+        StringBuilder object = factoryService.getInstanceByTypes("java.lang.StringBuilder",
+            new Object[] { Integer.valueOf(32) }, new Class<?>[] { int.class });
+        assertEquals(32, object.capacity());
+        object = factoryService.getInstanceBySignature("java.lang.StringBuilder", null, new Object[0], Signature.EMPTY);
+        assertEquals(0, object.length());
+
+        assertTrue(factoryService.getInstanceBySignature("org.apache.fulcrum.factory.SelfProduct",
+            new Object[] { "x" }, signature) instanceof SelfFactory);
+        assertThrows(FactoryException.class, () -> factoryService.getInstanceByTypes("java.lang.StringBuilder",
+            new Object[] { "x" }, new Class<?>[] { java.util.Date.class }));
+        assertThrows(IllegalArgumentException.class, () -> Signature.of(String.class, null));
+    }
+
+    /**
+     * Classes configured with a static factory method are created by calling it
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetInstanceFactoryMethod() throws Exception
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            Integer value = factoryService.getInstance("java.lang.Integer",
+                new Object[] { "4" + i }, new String[] { "java.lang.String" });
+            assertEquals(Integer.valueOf(40 + i), value);
+        }
+        assertEquals(Integer.valueOf(7), factoryService.getInstanceBySignature("java.lang.Integer",
+            new Object[] { Integer.valueOf(7) }, Signature.of(int.class)));
+        assertEquals(Integer.valueOf(12), factoryService.getInstance("java.lang.Integer",
+            new Object[] { "12" }, null));
+        assertEquals(Integer.valueOf(255), factoryService.getInstance("java.lang.Integer",
+            new Object[] { "ff", Integer.valueOf(16) }, null));
+        assertEquals(Duration.ofSeconds(3), factoryService.getInstance("java.time.Duration",
+            new Object[] { Long.valueOf(3) }, new String[] { "long" }));
+        assertEquals(Duration.ofSeconds(5, 1), factoryService.getInstance("java.time.Duration",
+            new Object[] { Integer.valueOf(5), Integer.valueOf(1) }, null));
+
+        assertFalse(factoryService.isLoaderSupported("java.lang.Integer"));
+        assertThrows(FactoryException.class, () -> factoryService.getInstance("java.lang.Integer"));
+        assertThrows(FactoryException.class, () -> factoryService.getInstance("java.lang.Integer",
+            new Object[] { "x" }, new String[] { "java.lang.String" }));
+    }
+
+    /**
+     * Classes configured with a prototype are copied from it
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testPrototype() throws Exception
+    {
+        Date first = factoryService.getInstance("java.util.Date");
+        Date second = factoryService.getInstance("java.util.Date");
+        assertEquals(first, second);
+        assertNotSame(first, second);
+
+        factoryService.setPrototype("java.util.Date", new Date(1000));
+        assertEquals(new Date(1000), factoryService.getInstance("java.util.Date"));
+        assertEquals(new Date(5), factoryService.getInstance("java.util.Date",
+            new Object[] { Long.valueOf(5) }, null));
+        assertThrows(FactoryException.class, () -> factoryService.setPrototype("java.util.Date", "x"));
+
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        sorted.put("key", "value");
+        factoryService.setPrototype("java.util.TreeMap", sorted);
+        TreeMap<String, String> sortedCopy = factoryService.getInstance("java.util.TreeMap");
+        sortedCopy.clear();
+        assertEquals(1, sorted.size());
+        assertEquals(sorted, factoryService.getInstance("java.util.TreeMap"));
+
+        LinkedHashMap<String, List<String>> nested = new LinkedHashMap<String, List<String>>();
+        nested.put("key", new ArrayList<String>(Arrays.asList("a", "b")));
+        factoryService.setPrototype("java.util.LinkedHashMap", nested);
+        LinkedHashMap<String, List<String>> nestedCopy = factoryService.getInstance("java.util.LinkedHashMap");
+        assertEquals(nested, nestedCopy);
+        assertNotSame(nested.get("key"), nestedCopy.get("key"));
+
+        factoryService.setPrototype("java.util.TreeMap", null);
+        assertTrue(((TreeMap<?, ?>) factoryService.getInstance("java.util.TreeMap")).isEmpty());
+
+        CopyBean bean = new CopyBean("copy");
+        factoryService.setPrototype(CopyBean.class.getName(), bean);
+        CopyBean beanCopy = factoryService.getInstance(CopyBean.class.getName());
+        assertNotSame(bean, beanCopy);
+        assertEquals("copy", beanCopy.name);
+
+        SerialBean serial = new SerialBean("serial");
+        factoryService.setPrototype(SerialBean.class.getName(), serial);
+        SerialBean serialCopy = factoryService.getInstance(SerialBean.class.getName());
+        assertNotSame(serial, serialCopy);
+        assertEquals("serial", serialCopy.name);
+
+        assertThrows(FactoryException.class, () -> factoryService.setPrototype("java.lang.Object", new Object()));
+
+        BigInteger big = new BigInteger("12345678901234567890");
+        factoryService.setPrototype("java.math.BigInteger", big);
+        BigInteger bigCopy = factoryService.getInstance("java.math.BigInteger");
+        assertEquals(big, bigCopy);
+        assertNotSame(big, bigCopy);
+        factoryService.setPrototype("java.math.BigInteger", null);
+
+        assertThrows(FactoryException.class, () -> factoryService.setPrototype(
+            "org.apache.fulcrum.factory.SelfProduct", new Object()));
+        assertTrue(factoryService.getInstance("org.apache.fulcrum.factory.SelfProduct") instanceof SelfFactory);
+        assertThrows(FactoryException.class, () -> factoryService.setPrototype("java.lang.Integer", Integer.valueOf(1)));
+    }
+
+    /**
+     * Instances of scoped classes are shared within their scope
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testScopes() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            Object singleton = factoryService.getInstance("java.lang.Object");
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 32; i++)
+            {
+                futures.add(executor.submit(() -> factoryService.getInstance("java.lang.Object")));
+            }
+            for (Future<Object> future : futures)
+            {
+                assertSame(singleton, future.get());
+            }
+            assertSame(singleton, factoryService.supplierFor("java.lang.Object").getInstance());
+
+            Object perThread = factoryService.getInstance("java.util.HashSet");
+            assertSame(perThread, factoryService.getInstance("java.util.HashSet"));
+            assertNotSame(perThread, executor.submit(() -> factoryService.getInstance("java.util.HashSet")).get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertNotSame(factoryService.getInstance("java.util.Vector"), factoryService.getInstance("java.util.Vector"));
+
+        assertThrows(FactoryException.class, () -> factoryService.getInstance("java.util.ArrayDeque"));
+        try (RequestScope scope = factoryService.openRequestScope())
+        {
+            Object outer = factoryService.getInstance("java.util.ArrayDeque");
+            assertSame(outer, factoryService.getInstance("java.util.ArrayDeque"));
+            try (RequestScope nested = factoryService.openRequestScope())
+            {
+                assertNotSame(outer, factoryService.getInstance("java.util.ArrayDeque"));
+            }
+            assertSame(outer, factoryService.getInstance("java.util.ArrayDeque"));
+        }
+        assertThrows(FactoryException.class, () -> factoryService.getInstance("java.util.ArrayDeque"));
+
+        /* Closing the enclosing scope first also closes the nested one. */
+        RequestScope outer = factoryService.openRequestScope();
+        RequestScope nested = factoryService.openRequestScope();
+        outer.close();
+        assertFalse(nested.isOpen());
+        assertThrows(FactoryException.class, () -> factoryService.getInstance("java.util.ArrayDeque"));
+        nested.close();
+        assertThrows(FactoryException.class, () -> factoryService.getInstance("java.util.ArrayDeque"));
+        try (RequestScope scope = factoryService.openRequestScope())
+        {
+            assertSame(factoryService.getInstance("java.util.ArrayDeque"),
+                factoryService.getInstance("java.util.ArrayDeque"));
+        }
+    }
+
+    /**
+     * Instances are created asynchronously and in batches
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetInstanceAsync() throws Exception
+    {
+        CompletableFuture<StringBuilder> future = factoryService.getInstanceAsync("java.lang.StringBuilder",
+            new Object[] { "async" }, new String[] { "java.lang.String" });
+        assertEquals("async", future.get().toString());
+        assertTrue(factoryService.getInstanceAsync("java.util.LinkedList").get() instanceof LinkedList);
+        ExecutionException x = assertThrows(ExecutionException.class,
+            () -> factoryService.getInstanceAsync("org.apache.fulcrum.factory.NoSuchAsyncClass").get());
+        assertTrue(x.getCause() instanceof FactoryException);
+
+        List<StringBuilder> batch = factoryService.getInstances("java.lang.StringBuilder", 5);
+        assertEquals(5, batch.size());
+        assertEquals(5, new HashSet<Object>(batch).size());
+        assertTrue(factoryService.getInstances("java.lang.StringBuilder", 0).isEmpty());
+        assertNotSame(factoryService.getInstances("java.lang.Object", 2).get(0),
+            factoryService.getInstance("java.lang.Object"));
+
+        DefaultConfiguration conf = new DefaultConfiguration("factory");
+        DefaultConfiguration async = new DefaultConfiguration("async");
+        async.setAttribute("executor", "virtual");
+        conf.addChild(async);
+        DefaultFactoryService service = new DefaultFactoryService();
+        service.configure(conf);
+        service.initialize();
+        assertTrue(service.getInstanceAsync("java.util.LinkedList").get() instanceof LinkedList);
+        service.dispose();
+    }
+
+    /**
+     * Prefetched classes are taken from a buffer refilled in the background
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testPrefetch() throws Exception
+    {
+        PrefetchBuffer<TreeSet<?>> buffer = ((DefaultFactoryService) factoryService).getPrefetchBuffer("java.util.TreeSet");
+        for (int i = 0; i < 500 && buffer.size() < 4; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(4, buffer.size());
+
+        Object first = factoryService.getInstance("java.util.TreeSet");
+        Object second = factoryService.getInstance("java.util.TreeSet");
+        assertNotSame(first, second);
+        assertTrue(factoryService.getInstance("java.util.TreeSet") instanceof TreeSet);
+        assertEquals(3, buffer.getHits());
+        for (int i = 0; i < 500 && buffer.size() < 4; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(4, buffer.size());
+        assertTrue(buffer.getCreated() >= 7);
+    }
+
+    /**
+     * Class loaders are added and removed at runtime, and the adaptive order
+     * tries the loader of a package first
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testAdaptiveClassLoaders() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("factory");
+        DefaultConfiguration adaptive = new DefaultConfiguration("adaptive-order");
+        adaptive.setAttribute("enabled", "true");
+        conf.addChild(adaptive);
+        DefaultConfiguration classCache = new DefaultConfiguration("class-cache");
+        classCache.setAttribute("size", "0");
+        conf.addChild(classCache);
+        DefaultFactoryService service = new DefaultFactoryService();
+        service.configure(conf);
+        service.initialize();
+
+        PackageLoader first = new PackageLoader("plugin.a.", ArrayList.class);
+        PackageLoader second = new PackageLoader("plugin.b.", LinkedList.class);
+        service.addClassLoader(first);
+        service.addClassLoader(second);
+
+        assertTrue(service.getInstance("plugin.b.Foo") instanceof LinkedList);
+        assertTrue(service.getInstance("plugin.b.Bar") instanceof LinkedList);
+        assertTrue(service.getInstance("plugin.a.Foo") instanceof ArrayList);
+        assertEquals(2, first.attempts);
+        assertEquals(1, service.getFailedLoaderAttempts());
+
+        assertTrue(service.removeClassLoader(second));
+        assertFalse(service.removeClassLoader(second));
+        assertThrows(FactoryException.class, () -> service.getInstance("plugin.b.Foo"));
+        service.addClassLoader(second);
+        assertTrue(service.getInstance("plugin.b.Foo") instanceof LinkedList);
+        service.dispose();
+    }
+
+    /**
+     * Implementations of the original interface get the default methods
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testDefaultMethods() throws Exception
+    {
+        FactoryService service = new MinimalFactoryService(factoryService);
+
+        assertEquals("x", service.getInstanceBySignature("java.lang.StringBuilder", new Object[] { "x" },
+            Signature.of(String.class)).toString());
+        assertTrue(service.getInstanceAsync("java.util.LinkedList").get() instanceof LinkedList);
+        ExecutionException x = assertThrows(ExecutionException.class,
+            () -> service.getInstanceAsync("org.apache.fulcrum.factory.NoSuchAsyncClass").get());
+        assertTrue(x.getCause() instanceof FactoryException);
+        assertEquals(3, service.getInstances("java.util.LinkedList", 3).size());
+
+        assertTrue(service.supplierFor("java.util.LinkedList").getInstance() instanceof LinkedList);
+        assertEquals("y", service.supplierFor(StringBuilder.class, "java.lang.String")
+            .getInstance(new Object[] { "y" }).toString());
+        assertTrue(service.supplierFor(LinkedList.class).getInstance() instanceof LinkedList);
+
+        LinkedList<?> list = service.borrowInstance("java.util.LinkedList");
+        assertFalse(service.returnInstance("java.util.LinkedList", list));
+        assertThrows(UnsupportedOperationException.class, () -> service.setPrototype("java.util.Date", new Date()));
+        assertThrows(UnsupportedOperationException.class, () -> service.openRequestScope());
+        assertSame(FactoryStatistics.EMPTY, service.getStatistics());
+        assertTrue(service.isAvailable("java.util.LinkedList"));
+        assertFalse(service.isAvailable("org.apache.fulcrum.factory.NoSuchDefaultClass"));
+    }
+
+    /**
+     * Class names without a factory are remembered up to the size of the class cache
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testNoFactoryLimit() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("factory");
+        DefaultConfiguration classCache = new DefaultConfiguration("class-cache");
+        classCache.setAttribute("size", "2");
+        conf.addChild(classCache);
+        DefaultFactoryService service = new DefaultFactoryService();
+        service.configure(conf);
+        service.initialize();
+
+        for (int i = 0; i < 10; i++)
+        {
+            String className = "org.apache.fulcrum.factory.NoSuchScreen" + i;
+            assertThrows(FactoryException.class, () -> service.getInstance(className));
+        }
+        assertTrue(service.getInstance("java.util.ArrayList") instanceof ArrayList);
+        assertEquals(2, service.getNoFactoryCount());
+
+        service.setPrototype("org.apache.fulcrum.factory.NoSuchScreen0", null);
+        assertEquals(1, service.getNoFactoryCount());
+        service.dispose();
+    }
+
+    /**
+     * Dispose releases thread scoped instances of all threads
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testDisposeThreadScope() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("factory");
+        DefaultConfiguration scope = new DefaultConfiguration("scope");
+        DefaultConfiguration hashSet = new DefaultConfiguration("java.util.HashSet");
+        hashSet.setValue("thread");
+        scope.addChild(hashSet);
+        conf.addChild(scope);
+        DefaultFactoryService service = new DefaultFactoryService();
+        service.configure(conf);
+        service.initialize();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            WeakReference<Object> instance = new WeakReference<Object>(
+                executor.submit(() -> service.getInstance("java.util.HashSet")).get());
+            assertSame(instance.get(), executor.submit(() -> service.getInstance("java.util.HashSet")).get());
+
+            service.dispose();
+            for (int i = 0; i < 100 && instance.get() != null; i++)
+            {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertNull(instance.get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Classes in routed packages are loaded by the loader owning the longest
+     * matching prefix only
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testRoutedClassLoaders() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("factory");
+        DefaultConfiguration classCache = new DefaultConfiguration("class-cache");
+        classCache.setAttribute("size", "0");
+        conf.addChild(classCache);
+        DefaultFactoryService service = new DefaultFactoryService();
+        service.configure(conf);
+        service.initialize();
+
+        PackageLoader first = new PackageLoader("plugin.", ArrayList.class);
+        PackageLoader second = new PackageLoader("plugin.b.", LinkedList.class);
+        PackageLoader third = new PackageLoader("plugin.b.deep.", HashSet.class);
+        service.addClassLoader(first);
+        service.addClassLoader(second, "plugin.b");
+        service.addClassLoader(third, "plugin.b.deep.");
+        assertThrows(IllegalArgumentException.class, () -> service.addClassLoader(first, "plugin.b."));
+
+        assertTrue(service.getInstance("plugin.b.Foo") instanceof LinkedList);
+        assertTrue(service.getInstance("plugin.b.deep.Foo") instanceof HashSet);
+        assertTrue(service.getInstance("plugin.bb.Foo") instanceof ArrayList);
+        assertEquals(1, first.attempts);
+        assertEquals(1, second.attempts);
+        assertEquals(1, third.attempts);
+        assertEquals(0, service.getFailedLoaderAttempts());
+
+        assertThrows(FactoryException.class, () -> service.getInstance("other.b.Foo"));
+        assertEquals(3, service.getFailedLoaderAttempts());
+
+        assertTrue(service.removeClassLoader(second));
+        assertTrue(service.getInstance("plugin.b.Foo") instanceof ArrayList);
+        service.dispose();
+
+        DefaultConfiguration conflict = new DefaultConfiguration("factory");
+        for (String packages : new String[] { "com.acme.plugins., com.acme.ext.", "com.acme.plugins" })
+        {
+            DefaultConfiguration loader = new DefaultConfiguration("classloader");
+            loader.setAttribute("packages", packages);
+            loader.setValue(URLClassLoader.class.getName());
+            conflict.addChild(loader);
+        }
+        assertThrows(ConfigurationException.class, () -> new DefaultFactoryService().configure(conflict));
+    }
+
+    /**
+     * Class to test for Object getInstance(Class)
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetInstanceClass() throws Exception
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            assertTrue(factoryService.getInstance(ArrayList.class) instanceof ArrayList);
+        }
+
+        assertThrows(FactoryException.class, () -> factoryService.getInstance(AbstractList.class));
+        assertThrows(FactoryException.class, () -> factoryService.getInstance(Math.class));
+        assertThrows(FactoryException.class, () -> factoryService.getInstance(Integer.class));
+        assertThrows(FactoryException.class, () -> factoryService.getInstance(AbstractBean.class));
+        assertThrows(FactoryException.class, () -> factoryService.getInstance(List.class));
+        assertThrows(FactoryException.class, () -> factoryService.supplierFor(AbstractBean.class).getInstance());
+
+        FactoryException x = assertThrows(FactoryException.class,
+            () -> factoryService.getInstance(FailingBean.class));
+        assertTrue(x.getCause() instanceof IOException);
+    }
+
+    /**
+     * Class to test for InstanceSupplier supplierFor(String) and supplierFor(Class, String...)
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testSupplierFor() throws Exception
+    {
+        InstanceSupplier<StringBuilder> supplier = factoryService.supplierFor("java.lang.StringBuilder");
+        assertTrue(supplier.getInstance() instanceof StringBuilder);
+        assertTrue(supplier.getInstance() != supplier.getInstance());
+
+        InstanceSupplier<StringBuilder> withParams =
+            factoryService.supplierFor(StringBuilder.class, "java.lang.String");
+        assertEquals("one", withParams.getInstance(new Object[] { "one" }).toString());
+        assertEquals("two", withParams.getInstance(new Object[] { "two" }).toString());
+
+        assertThrows(FactoryException.class, () -> supplier.getInstance(new Object[] { "x" }));
+
+        InstanceSupplier<SelfFactory> factorySupplier =
+            factoryService.supplierFor("org.apache.fulcrum.factory.SelfProduct");
+        assertTrue(factorySupplier.getInstance(new Object[0]) instanceof SelfFactory);
+        assertThrows(FactoryException.class, () -> factorySupplier.getInstance(new Object[] { "x" }));
+        assertThrows(FactoryException.class,
+            () -> factoryService.supplierFor("org.apache.fulcrum.factory.NoSuchClass"));
+        assertThrows(FactoryException.class,
+            () -> factoryService.supplierFor(StringBuilder.class, "java.util.Date"));
+    }
+
+    /**
+     * Class to test for Object borrowInstance(String) and returnInstance(String, Object)
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testBorrowInstance() throws Exception
+    {
+        StringBuilder sb = factoryService.borrowInstance("java.lang.StringBuilder");
+        assertTrue(factoryService.returnInstance("java.lang.StringBuilder", sb));
+        assertTrue(sb == factoryService.borrowInstance("java.lang.StringBuilder"));
+        assertFalse(factoryService.returnInstance("java.lang.StringBuilder", "not a StringBuilder"));
+        assertTrue(factoryService.borrowInstance("java.lang.StringBuilder") instanceof StringBuilder);
+
+        ArrayList<?> list = factoryService.borrowInstance("java.util.ArrayList");
+        assertTrue(!factoryService.returnInstance("java.util.ArrayList", list));
+        assertTrue(list != factoryService.borrowInstance("java.util.ArrayList"));
+    }
+
+    /**
+     * A configured factory is created once, even by racing threads
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetInstanceCustomFactory() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            for (int i = 0; i < 32; i++)
+            {
+                tasks.add(() -> factoryService.getInstance("org.apache.fulcrum.factory.SelfProduct"));
+            }
+
+            Set<Object> factories = new HashSet<Object>();
+            for (Future<Object> f : executor.invokeAll(tasks))
+            {
+                factories.add(f.get());
+            }
+            assertEquals(1, factories.size());
+            assertTrue(factories.iterator().next() instanceof SelfFactory);
+            assertTrue(!factoryService.isLoaderSupported("org.apache.fulcrum.factory.SelfProduct"));
+            assertTrue(factoryService.isLoaderSupported("java.lang.StringBuilder"));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Context switches are recorded under the class being instantiated and
+     * the number of class names with metrics is configured by its own attribute
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testSwitchContextStatistics() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("factory");
+        DefaultConfiguration metrics = new DefaultConfiguration("metrics");
+        metrics.setAttribute("enabled", "true");
+        metrics.setAttribute("classes", "1");
+        conf.addChild(metrics);
+        DefaultFactoryService service = new DefaultFactoryService();
+        service.configure(conf);
+        service.initialize();
+
+        try (URLClassLoader isolated = new URLClassLoader(
+            new URL[] { SerialBean.class.getProtectionDomain().getCodeSource().getLocation() }, null))
+        {
+            Object bean = isolated.loadClass(SerialBean.class.getName())
+                .getConstructor(String.class).newInstance("isolated");
+            Object[] params = new Object[] { bean };
+            service.switchParameters(CopyBean.class, new Class<?>[] { SerialBean.class }, params);
+            assertTrue(params[0] instanceof SerialBean);
+
+            FactoryStatistics statistics = service.getStatistics();
+            assertEquals(1, statistics.getClass(CopyBean.class.getName())
+                .getTiming(FactoryStatistics.Phase.SWITCH_CONTEXT).getCount());
+            assertNull(statistics.getClass(SerialBean.class.getName()));
+
+            service.getInstance("java.util.ArrayList");
+            assertNull(service.getStatistics().getClass("java.util.ArrayList"));
+        }
+        finally
+        {
+            service.dispose();
+        }
+    }
+
+    /**
+     * Class to test for FactoryStatistics getStatistics()
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testGetStatistics() throws Exception
+    {
+        for (int i = 0; i < 5; i++)
+        {
+            factoryService.getInstance("java.util.ArrayList");
+        }
+        factoryService.getInstance("org.apache.fulcrum.factory.SelfProduct");
+
+        FactoryStatistics statistics = factoryService.getStatistics();
+        FactoryStatistics.ClassStatistics list = statistics.getClass("java.util.ArrayList");
+        assertEquals(5, list.getInstantiations());
+        assertEquals(5, list.getTiming(FactoryStatistics.Phase.RESOLVE).getCount());
+        assertEquals(5, list.getTiming(FactoryStatistics.Phase.FACTORY_LOOKUP).getCount());
+        assertEquals(0, list.getTiming(FactoryStatistics.Phase.SWITCH_CONTEXT).getCount());
+
+        FactoryStatistics.Timing construct = list.getTiming(FactoryStatistics.Phase.CONSTRUCT);
+        assertTrue(construct.getTotalNanos() >= construct.getMaxNanos());
+        assertTrue(construct.getPercentileNanos(50) <= construct.getMaxNanos());
+
+        assertEquals(1, statistics.getClass("org.apache.fulcrum.factory.SelfProduct").getInstantiations());
+    }
+
+    /**
+     * Configured classes and factories are warmed up at initialization
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testWarmUp() throws Exception
+    {
+        WarmUpReport report = ((DefaultFactoryService) factoryService).getWarmUpReport();
+        assertTrue(report.getWarmed().contains("java.lang.StringBuilder(int)"));
+        assertTrue(report.getWarmed().contains("java.util.LinkedList"));
+        assertTrue(report.getWarmed().contains("org.apache.fulcrum.factory.SelfProduct"));
+        assertTrue(report.getFailed().get("org.apache.fulcrum.factory.NoSuchInitClass")
+            .startsWith("java.lang.ClassNotFoundException: org.apache.fulcrum.factory.NoSuchInitClass"));
+        assertTrue(report.getPending().isEmpty());
+    }
+
+    /**
+     * Classes requested in one run are replayed at the next start
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testStartupList() throws Exception
+    {
+        Path file = Files.createTempFile("factory", ".lst");
+        try
+        {
+            Files.write(file, Arrays.asList("org.apache.fulcrum.factory.NoSuchListClass", "java.util.Date <bad>"));
+            DefaultConfiguration conf = new DefaultConfiguration("factory");
+            DefaultConfiguration list = new DefaultConfiguration("startup-list");
+            list.setAttribute("file", file.toString());
+            conf.addChild(list);
+
+            DefaultFactoryService service = new DefaultFactoryService();
+            service.configure(conf);
+            service.initialize();
+            service.getInstance("java.util.LinkedList");
+            service.getInstance("java.lang.StringBuilder", new Object[] { "x" }, new String[] { "java.lang.String" });
+            service.dispose();
+
+            service = new DefaultFactoryService();
+            service.configure(conf);
+            service.initialize();
+            WarmUpReport report = null;
+            for (int i = 0; i < 500 && report == null; i++)
+            {
+                Thread.sleep(10);
+                report = service.getReplayReport();
+            }
+            service.dispose();
+
+            assertTrue(report.getWarmed().contains("java.util.LinkedList"));
+            assertTrue(report.getWarmed().contains("java.lang.StringBuilder(java.lang.String)"));
+            assertTrue(report.getFailed().isEmpty());
+
+            /* Replayed classes are not recorded again. */
+            List<String> lines = Files.readAllLines(file);
+            assertFalse(lines.contains("java.util.LinkedList"));
+            assertFalse(lines.contains("java.lang.StringBuilder java.lang.String"));
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * A service failing to register its MXBean starts no threads and
+     * leaves the registered MXBean of the same name alone
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testManagementConflict() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("factory");
+        DefaultConfiguration jmx = new DefaultConfiguration("jmx");
+        jmx.setAttribute("enabled", "true");
+        jmx.setAttribute("name", "test");
+        conf.addChild(jmx);
+        DefaultConfiguration async = new DefaultConfiguration("async");
+        async.setAttribute("executor", "fixed");
+        conf.addChild(async);
+        DefaultConfiguration prefetch = new DefaultConfiguration("prefetch");
+        prefetch.addChild(new DefaultConfiguration("java.util.ArrayList"));
+        conf.addChild(prefetch);
+
+        int threads = countFactoryThreads();
+        DefaultFactoryService service = new DefaultFactoryService();
+        service.configure(conf);
+        assertThrows(Exception.class, service::initialize);
+        assertEquals(threads, countFactoryThreads());
+        service.dispose();
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+            new ObjectName("org.apache.fulcrum.factory:type=FactoryService,name=test")));
+    }
+
+    /**
+     * @return the number of live threads started by factory services
+     */
+    private static int countFactoryThreads()
+    {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (thread.getName().startsWith("fulcrum-factory-"))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The service registers its MXBean while it is active
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testManagement() throws Exception
+    {
+        FactoryServiceMXBean management = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+            new ObjectName("org.apache.fulcrum.factory:type=FactoryService,name=test"), FactoryServiceMXBean.class);
+
+        assertTrue(management.getObjectFactoryClasses().containsKey("org.apache.fulcrum.factory.SelfProduct"));
+        List<String> failures = management.warmUp("java.util.ArrayList, org.apache.fulcrum.factory.SelfProduct "
+            + "org.apache.fulcrum.factory.NoSuchWarmUpClass");
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0).startsWith("org.apache.fulcrum.factory.NoSuchWarmUpClass"));
+        assertEquals(FactoryServiceTest.SelfFactory.class.getName(),
+            management.getFactories().get("org.apache.fulcrum.factory.SelfProduct"));
+        assertTrue(management.getClassCacheSize() > 0);
+        assertEquals(Integer.valueOf(0), management.getObjectPoolSizes().get("java.lang.StringBuilder"));
+        long hits = management.getObjectPoolHits().get("java.lang.StringBuilder").longValue();
+        long misses = management.getObjectPoolMisses().get("java.lang.StringBuilder").longValue();
+        Object builder = factoryService.borrowInstance("java.lang.StringBuilder");
+        assertTrue(factoryService.returnInstance("java.lang.StringBuilder", builder));
+        assertSame(builder, factoryService.borrowInstance("java.lang.StringBuilder"));
+        assertEquals(hits + 1, management.getObjectPoolHits().get("java.lang.StringBuilder").longValue());
+        assertEquals(misses + 1, management.getObjectPoolMisses().get("java.lang.StringBuilder").longValue());
+        assertEquals(Long.valueOf(0), management.getObjectPoolDiscards().get("java.lang.StringBuilder"));
+        assertTrue(management.getPrefetchBuffers().get("java.util.TreeSet").contains("/4 buffered"));
+
+        for (int i = 0; i < 8; i++)
+        {
+            factoryService.getInstance("java.util.ArrayList");
+        }
+        factoryService.getInstance("java.util.HashMap");
+        management.setTopClasses(1);
+        assertEquals(1, management.getTopClassesByCount().size());
+        assertTrue(management.getTopClassesByCount().get(0).startsWith("java.util.ArrayList: 8 instances"));
+
+        management.clearCaches();
+        assertEquals(0, management.getClassCacheSize());
+        management.resetStatistics();
+        assertTrue(management.getTopClassesByTime().isEmpty());
+    }
+
+    /**
+     * Factory operations emit Flight Recorder events when enabled
+     *
+     * @throws Exception Generic exception
+     */
+    @Test
+    public void testFlightRecorderEvents() throws Exception
+    {
+        assertNull(FactoryEvents.Construct.start());
+        Path file = Files.createTempFile("factory", ".jfr");
+        try (Recording recording = new Recording())
+        {
+            recording.enable("org.apache.fulcrum.factory.ClassMiss").withThreshold(Duration.ZERO);
+            recording.enable("org.apache.fulcrum.factory.Construct").withThreshold(Duration.ZERO);
+            recording.enable("org.apache.fulcrum.factory.FactoryInvocation").withThreshold(Duration.ZERO);
+            recording.start();
+            assertNotNull(FactoryEvents.Construct.start());
+
+            factoryService.getInstance("java.util.ArrayList");
+            factoryService.getInstance("org.apache.fulcrum.factory.SelfProduct");
+            assertThrows(FactoryException.class,
+                () -> factoryService.getInstance("org.apache.fulcrum.factory.NoSuchEventClass"));
+
+            recording.stop();
+            recording.dump(file);
+
+            Set<String> events = new HashSet<String>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file))
+            {
+                events.add(event.getEventType().getName() + ":" + event.getString("className"));
+            }
+            assertTrue(events.contains("org.apache.fulcrum.factory.Construct:java.util.ArrayList"));
+            assertTrue(events.contains(
+                "org.apache.fulcrum.factory.FactoryInvocation:org.apache.fulcrum.factory.SelfProduct"));
+            assertTrue(events.contains(
+                "org.apache.fulcrum.factory.ClassMiss:org.apache.fulcrum.factory.NoSuchEventClass"));
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * A factory producing itself
+     */
+    public static class SelfFactory implements Factory<Object>
+    {
+        @Override
+        public void init(String className)
+        {
+            // nothing to initialize
+        }
+
+        @Override
+        public Object getInstance()
+        {
+            return this;
+        }
+
+        @Override
+        public Object getInstance(ClassLoader loader)
+        {
+            return this;
+        }
+
+        @Override
+        public Object getInstance(Object[] params, String[] signature)
+        {
+            return this;
+        }
+
+        @Override
+        public Object getInstance(ClassLoader loader, Object[] params, String[] signature)
+        {
+            return this;
+        }
+
+        @Override
+        public boolean isLoaderSupported()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * A cloneable bean without a public clone method, copied by its copy constructor
+     */
+    public static class CopyBean implements Cloneable
+    {
+        /** the name */
+        final String name;
+
+        /**
+         * @param name the name
+         */
+        public CopyBean(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * @param other the bean to copy
+         */
+        public CopyBean(CopyBean other)
+        {
+            this(other.name);
+        }
+    }
+
+    /**
+     * A cloneable bean without a public clone method or copy constructor,
+     * copied by serialization
+     */
+    public static class SerialBean implements Cloneable, Serializable
+    {
+        /** serial version */
+        private static final long serialVersionUID = 1L;
+
+        /** the name */
+        final String name;
+
+        /**
+         * @param name the name
+         */
+        public SerialBean(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A service implementing only the methods of the original interface
+     */
+    static class MinimalFactoryService implements FactoryService
+    {
+        /** the delegate */
+        private final FactoryService delegate;
+
+        /**
+         * @param delegate the delegate
+         */
+        MinimalFactoryService(FactoryService delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public <T> T getInstance(Class<T> clazz) throws FactoryException
+        {
+            return delegate.getInstance(clazz);
+        }
+
+        @Override
+        public <T> T getInstance(String className) throws FactoryException
+        {
+            return delegate.getInstance(className);
+        }
+
+        @Override
+        public <T> T getInstance(String className, ClassLoader loader) throws FactoryException
+        {
+            return delegate.getInstance(className, loader);
+        }
+
+        @Override
+        public <T> T getInstance(String className, Object[] params, String[] signature)
+            throws FactoryException
+        {
+            return delegate.getInstance(className, params, signature);
+        }
+
+        @Override
+        public <T> T getInstance(String className, ClassLoader loader, Object[] params, String[] signature)
+            throws FactoryException
+        {
+            return delegate.getInstance(className, loader, params, signature);
+        }
+
+        @Override
+        public boolean isLoaderSupported(String className) throws FactoryException
+        {
+            return delegate.isLoaderSupported(className);
+        }
+
+        @Override
+        public Class<?>[] getSignature(Class<?> clazz, Object[] params, String[] signature)
+            throws ClassNotFoundException
+        {
+            return delegate.getSignature(clazz, params, signature);
+        }
+    }
+
+    /**
+     * A class loader answering the classes of one package with a given class
+     */
+    static class PackageLoader extends ClassLoader
+    {
+        /** the package prefix */
+        private final String prefix;
+
+        /** the class returned for the package */
+        private final Class<?> clazz;
+
+        /** the number of load attempts */
+        int attempts;
+
+        /**
+         * @param prefix the package prefix
+         * @param clazz the class returned for the package
+         */
+        PackageLoader(String prefix, Class<?> clazz)
+        {
+            super(null);
+            this.prefix = prefix;
+            this.clazz = clazz;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+        {
+            attempts++;
+            if (name.startsWith(prefix))
+            {
+                return clazz;
+            }
+            throw new ClassNotFoundException(name);
+        }
+    }
+
+    /**
+     * A bean whose constructor throws a checked exception
+     */
+    public static class FailingBean
+    {
+        /**
+         * @throws IOException always
+         */
+        public FailingBean() throws IOException
+        {
+            throw new IOException("failed");
+        }
+    }
+
+    /**
+     * An abstract class with a public no-arg constructor
+     */
+    public static abstract class AbstractBean
+    {
+        /**
+         * Public no-arg constructor
+         */
+        public AbstractBean()
+        {
+            // nothing to do
+        }
+    }
 }
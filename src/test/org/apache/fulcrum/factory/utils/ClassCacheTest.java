@@ -0,0 +1,79 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the resolved class cache
+ *
+ * @version $Id$
+ */
+public class ClassCacheTest
+{
+    /**
+     * Classes are cached per class loader
+     */
+    @Test
+    public void testGetPerLoader()
+    {
+        ClassCache cache = new ClassCache();
+        ClassLoader loader = getClass().getClassLoader();
+        ClassLoader other = new URLClassLoader(new URL[0], loader);
+
+        assertNull(cache.get(loader, "java.lang.StringBuilder"));
+        cache.put(loader, "java.lang.StringBuilder", StringBuilder.class);
+        assertSame(StringBuilder.class, cache.get(loader, "java.lang.StringBuilder"));
+        assertNull(cache.get(other, "java.lang.StringBuilder"));
+        assertNull(cache.get(null, "java.lang.StringBuilder"));
+
+        cache.put(null, "java.lang.String", String.class);
+        assertSame(String.class, cache.get(null, "java.lang.String"));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    /**
+     * The cache does not grow beyond its size
+     */
+    @Test
+    public void testMaxSize()
+    {
+        ClassCache cache = new ClassCache(2);
+        ClassLoader loader = getClass().getClassLoader();
+
+        cache.put(loader, "java.lang.String", String.class);
+        cache.put(loader, "java.lang.Integer", Integer.class);
+        cache.put(loader, "java.lang.Long", Long.class);
+        assertEquals(2, cache.size());
+        assertSame(Long.class, cache.get(loader, "java.lang.Long"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,114 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the recorded class list
+ *
+ * @version $Id$
+ */
+public class ClassListTest
+{
+    /** a temporary directory */
+    @TempDir
+    Path dir;
+
+    /**
+     * Recorded entries are written and read back
+     *
+     * @throws Exception on errors
+     */
+    @Test
+    public void testWriteRead() throws Exception
+    {
+        ClassList list = new ClassList(3);
+        list.record("java.lang.StringBuilder", null);
+        list.record("java.lang.StringBuilder", null);
+        list.record("java.lang.StringBuilder", new String[] { "int" });
+        list.record("java.util.ArrayList", null);
+        list.record("java.util.HashMap", null);
+        assertEquals(3, list.size());
+
+        Path file = dir.resolve("sub").resolve("classes.lst");
+        list.write(file);
+
+        List<Map.Entry<String, String[]>> entries = ClassList.read(file);
+        assertEquals(3, entries.size());
+        assertEquals("java.lang.StringBuilder", entries.get(0).getKey());
+        assertEquals("java.util.ArrayList", entries.get(2).getKey());
+        assertTrue(entries.stream().anyMatch(e -> Arrays.equals(new String[] { "int" }, e.getValue())));
+    }
+
+    /**
+     * Signatures with array types in source and binary form are read back
+     *
+     * @throws Exception on errors
+     */
+    @Test
+    public void testArraySignature() throws Exception
+    {
+        ClassList list = new ClassList(ClassList.DEFAULT_SIZE);
+        list.record("java.lang.String", new String[] { "char[]" });
+        list.record("java.util.Date", new String[] { "[Ljava.lang.String;", "Ljava/lang/String;" });
+
+        Path file = dir.resolve("classes.lst");
+        list.write(file);
+
+        List<Map.Entry<String, String[]>> entries = ClassList.read(file);
+        assertEquals(2, entries.size());
+        assertTrue(entries.stream().anyMatch(e -> Arrays.equals(new String[] { "char[]" }, e.getValue())));
+        assertTrue(entries.stream().anyMatch(e -> Arrays.equals(
+            new String[] { "[Ljava.lang.String;", "Ljava/lang/String;" }, e.getValue())));
+    }
+
+    /**
+     * Malformed lines and missing files are ignored
+     *
+     * @throws Exception on errors
+     */
+    @Test
+    public void testReadInvalid() throws Exception
+    {
+        assertTrue(ClassList.read(dir.resolve("missing.lst")).isEmpty());
+
+        Path file = dir.resolve("classes.lst");
+        Files.write(file, Arrays.asList("# comment", "", "java.lang.String", "not a class!",
+            "java.lang.StringBuilder java.lang.String", "java.util.Date <bad>"), StandardCharsets.UTF_8);
+
+        List<Map.Entry<String, String[]>> entries = ClassList.read(file);
+        assertEquals(2, entries.size());
+        assertArrayEquals(new String[0], entries.get(0).getValue());
+        assertArrayEquals(new String[] { "java.lang.String" }, entries.get(1).getValue());
+    }
+}
@@ -0,0 +1,141 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for selecting constructors by argument types
+ *
+ * @version $Id$
+ */
+public class ConstructorResolverTest
+{
+    /**
+     * Subtyping is preferred over unboxing, the most specific constructor wins
+     *
+     * @throws Exception on errors
+     */
+    @Test
+    public void testResolve() throws Exception
+    {
+        assertParameters(new Class<?>[] { String.class }, StringBuilder.class, String.class);
+        assertParameters(new Class<?>[] { int.class }, StringBuilder.class, Integer.class);
+        assertParameters(new Class<?>[] { int.class }, StringBuilder.class, Short.class);
+        assertParameters(new Class<?>[] { String.class }, StringBuilder.class, (Class<?>) null);
+        assertParameters(new Class<?>[] { CharSequence.class }, StringBuilder.class, StringBuffer.class);
+        assertParameters(new Class<?>[0], StringBuilder.class);
+
+        assertParameters(new Class<?>[] { Object.class }, Overloaded.class, Integer.class);
+        assertParameters(new Class<?>[] { String.class }, Overloaded.class, String.class);
+        assertParameters(new Class<?>[] { Integer.class, Object.class }, Overloaded.class, Integer.class, Long.class);
+        assertParameters(new Class<?>[] { long.class, long.class }, Overloaded.class, Short.class, Long.class);
+    }
+
+    /**
+     * Inapplicable and ambiguous arguments are rejected
+     */
+    @Test
+    public void testResolveFailure()
+    {
+        assertThrows(NoSuchMethodException.class,
+            () -> ConstructorResolver.resolve(StringBuilder.class, new Class<?>[] { Date.class }));
+        assertThrows(NoSuchMethodException.class,
+            () -> ConstructorResolver.resolve(StringBuilder.class, new Class<?>[] { Long.class }));
+        NoSuchMethodException x = assertThrows(NoSuchMethodException.class,
+            () -> ConstructorResolver.resolve(Overloaded.class, new Class<?>[] { Integer.class, Integer.class }));
+        assertTrue(x.getMessage().startsWith("Ambiguous"));
+    }
+
+    /**
+     * @param expected the expected parameter types
+     * @param clazz the class
+     * @param argumentTypes the argument types
+     * @throws NoSuchMethodException on errors
+     */
+    private static void assertParameters(Class<?>[] expected, Class<?> clazz, Class<?>... argumentTypes)
+        throws NoSuchMethodException
+    {
+        assertArrayEquals(expected, ConstructorResolver.resolve(clazz, argumentTypes).getParameterTypes());
+    }
+
+    /**
+     * A class with overloaded constructors
+     */
+    public static class Overloaded
+    {
+        /**
+         * @param o an object
+         */
+        public Overloaded(Object o)
+        {
+            // nothing
+        }
+
+        /**
+         * @param s a string
+         */
+        public Overloaded(String s)
+        {
+            // nothing
+        }
+
+        /**
+         * @param l a long
+         */
+        public Overloaded(long l)
+        {
+            // nothing
+        }
+
+        /**
+         * @param a a long
+         * @param b a long
+         */
+        public Overloaded(long a, long b)
+        {
+            // nothing
+        }
+
+        /**
+         * @param i an integer
+         * @param o an object
+         */
+        public Overloaded(Integer i, Object o)
+        {
+            // nothing
+        }
+
+        /**
+         * @param o an object
+         * @param i an integer
+         */
+        public Overloaded(Object o, Integer i)
+        {
+            // nothing
+        }
+    }
+}
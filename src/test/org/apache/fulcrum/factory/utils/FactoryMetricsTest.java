@@ -0,0 +1,55 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.fulcrum.factory.FactoryStatistics;
+import org.apache.fulcrum.factory.FactoryStatistics.Phase;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the factory metrics
+ *
+ * @version $Id$
+ */
+public class FactoryMetricsTest
+{
+    /**
+     * Class names beyond the maximum are collected together
+     */
+    @Test
+    public void testMaxSize()
+    {
+        FactoryMetrics metrics = new FactoryMetrics(2);
+        metrics.record("a.A", Phase.CONSTRUCT, 10);
+        metrics.record("a.B", Phase.CONSTRUCT, 10);
+        for (int i = 0; i < 100; i++)
+        {
+            metrics.record("a.Missing" + i, Phase.RESOLVE, 10);
+        }
+        metrics.record("a.A", Phase.CONSTRUCT, 10);
+
+        FactoryStatistics statistics = metrics.snapshot();
+        assertEquals(3, statistics.getClasses().size());
+        assertEquals(2, statistics.getClass("a.A").getInstantiations());
+        assertEquals(100, statistics.getClass(FactoryMetrics.OTHER_CLASSES).getTiming(Phase.RESOLVE).getCount());
+    }
+}
@@ -1,6 +1,8 @@
 package org.apache.fulcrum.factory.utils;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /*
  * Licensed to the Apache Software Foundation (ASF) under one
@@ -62,4 +64,29 @@ public class ObjectInputStreamForContextTest extends BaseUnit5Test
         assertEquals(object.toString(), object2.toString());
         assertEquals(object, object2);
     }
+
+    /**
+     * Arrays are resolved and classes are cached per loader
+     *
+     * @throws Exception generic exception
+     */
+    @Test
+    public void testResolveArrayCached() throws Exception
+    {
+        String[] object = new String[] { "a", "b" };
+        ClassLoader loader = getClass().getClassLoader();
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(object);
+        out.flush();
+
+        ByteArrayInputStream bin = new ByteArrayInputStream(bout.toByteArray());
+        ObjectInputStreamForContext in = new ObjectInputStreamForContext(bin, loader);
+        assertArrayEquals(object, (String[]) in.readObject());
+        in.close();
+
+        assertSame(String[].class,
+            ObjectInputStreamForContext.getSharedClassCache().get(loader, String[].class.getName()));
+    }
 }
@@ -0,0 +1,188 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.fulcrum.factory.Resettable;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the object pool
+ *
+ * @version $Id$
+ */
+public class ObjectPoolTest
+{
+    /**
+     * Instances are reused up to the maximum size
+     */
+    @Test
+    public void testPollOffer()
+    {
+        ObjectPool<Object> pool = new ObjectPool<Object>(1);
+        assertNull(pool.poll());
+
+        Object a = new Object();
+        Object b = new Object();
+        assertTrue(pool.offer(a));
+        assertFalse(pool.offer(b));
+        assertEquals(1, pool.size());
+
+        assertSame(a, pool.poll());
+        assertNull(pool.poll());
+
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(1, pool.getDiscards());
+    }
+
+    /**
+     * The maximum size holds across threads, and clearing empties the pool
+     * for all threads
+     *
+     * @throws Exception on errors
+     */
+    @Test
+    public void testThreads() throws Exception
+    {
+        ObjectPool<Object> pool = new ObjectPool<Object>(2);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<Future<Boolean>> offers = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 4; i++)
+            {
+                offers.add(executor.submit(() -> pool.offer(new Object())));
+            }
+            int pooled = 0;
+            for (Future<Boolean> offer : offers)
+            {
+                pooled += offer.get() ? 1 : 0;
+            }
+            assertEquals(2, pooled);
+            assertEquals(2, pool.size());
+
+            pool.clear();
+            assertEquals(0, pool.size());
+            for (int i = 0; i < 4; i++)
+            {
+                assertNull(executor.submit(pool::poll).get());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Instances returned by other threads can be borrowed, and clearing the
+     * pool releases them
+     *
+     * @throws Exception on errors
+     */
+    @Test
+    public void testStripes() throws Exception
+    {
+        ObjectPool<Object> pool = new ObjectPool<Object>(2, 4);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Object a = new Object();
+            assertTrue(executor.submit(() -> pool.offer(a)).get());
+            assertSame(a, pool.poll());
+
+            assertTrue(executor.submit(() -> pool.offer(new Object())).get());
+            assertTrue(pool.offer(new Object()));
+            assertFalse(executor.submit(() -> pool.offer(new Object())).get());
+            assertEquals(2, pool.size());
+
+            pool.clear();
+            assertEquals(0, pool.size());
+            assertNull(executor.submit(pool::poll).get());
+
+            WeakReference<Object> released = new WeakReference<Object>(
+                executor.submit(() -> {
+                    Object instance = new Object();
+                    pool.offer(instance);
+                    return instance;
+                }).get());
+            pool.clear();
+            for (int i = 0; i < 100 && released.get() != null; i++)
+            {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertNull(released.get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Resettable instances are reset when returned
+     */
+    @Test
+    public void testReset()
+    {
+        ObjectPool<Counter> pool = new ObjectPool<Counter>(1);
+        Counter counter = new Counter();
+        counter.count = 3;
+        assertTrue(pool.offer(counter));
+        assertEquals(0, pool.poll().count);
+
+        counter.count = -1;
+        assertFalse(pool.offer(counter));
+        assertEquals(1, pool.getDiscards());
+    }
+
+    /**
+     * A resettable counter
+     */
+    private static class Counter implements Resettable
+    {
+        /** the count */
+        int count;
+
+        @Override
+        public void reset()
+        {
+            if (count < 0)
+            {
+                throw new IllegalStateException("broken");
+            }
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the buffer of instances created ahead of time
+ *
+ * @version $Id$
+ */
+public class PrefetchBufferTest
+{
+    /**
+     * Refills start at the low-water mark and fill the buffer
+     *
+     * @throws Exception on errors
+     */
+    @Test
+    public void testRefill() throws Exception
+    {
+        AtomicInteger counter = new AtomicInteger();
+        PrefetchBuffer<Integer> buffer = new PrefetchBuffer<Integer>(3, 1);
+        assertNull(buffer.poll());
+        assertTrue(buffer.startRefill());
+        assertFalse(buffer.startRefill());
+        assertEquals(3, buffer.refill(counter::incrementAndGet));
+        assertEquals(3, buffer.size());
+
+        assertEquals(Integer.valueOf(1), buffer.poll());
+        assertFalse(buffer.startRefill());
+        assertEquals(Integer.valueOf(2), buffer.poll());
+        assertTrue(buffer.startRefill());
+        assertEquals(2, buffer.refill(counter::incrementAndGet));
+        assertEquals(2, buffer.getHits());
+        assertEquals(1, buffer.getMisses());
+        assertEquals(5, buffer.getCreated());
+    }
+
+    /**
+     * A failed instantiation stops the refill and allows the next one
+     */
+    @Test
+    public void testRefillFailure()
+    {
+        PrefetchBuffer<Object> buffer = new PrefetchBuffer<Object>(2, 0, 0);
+        assertTrue(buffer.startRefill());
+        assertThrows(IOException.class, () -> buffer.refill(() -> {
+            throw new IOException("failed");
+        }));
+        assertEquals(1, buffer.getFailures());
+        assertTrue(buffer.startRefill());
+
+        assertThrows(IllegalArgumentException.class, () -> new PrefetchBuffer<Object>(2, 2));
+        assertThrows(IllegalArgumentException.class, () -> new PrefetchBuffer<Object>(2, 0, -1));
+    }
+
+    /**
+     * Refills are backed off after failures until one succeeds
+     *
+     * @throws Exception on errors
+     */
+    @Test
+    public void testRefillBackoff() throws Exception
+    {
+        PrefetchBuffer<Object> buffer = new PrefetchBuffer<Object>(2, 0, 50);
+        assertTrue(buffer.startRefill());
+        assertThrows(IOException.class, () -> buffer.refill(() -> {
+            throw new IOException("failed");
+        }));
+        assertEquals(1, buffer.getConsecutiveFailures());
+        assertFalse(buffer.startRefill());
+
+        Thread.sleep(100);
+        assertTrue(buffer.startRefill());
+        assertThrows(IOException.class, () -> buffer.refill(() -> {
+            throw new IOException("failed");
+        }));
+        assertEquals(2, buffer.getConsecutiveFailures());
+        Thread.sleep(60);
+        assertFalse(buffer.startRefill());
+
+        Thread.sleep(100);
+        assertTrue(buffer.startRefill());
+        assertEquals(2, buffer.refill(Object::new));
+        assertEquals(0, buffer.getConsecutiveFailures());
+        assertEquals(2, buffer.getFailures());
+    }
+
+    /**
+     * A cancelled refill allows the next one
+     */
+    @Test
+    public void testCancelRefill()
+    {
+        PrefetchBuffer<Object> buffer = new PrefetchBuffer<Object>(2, 0);
+        assertTrue(buffer.startRefill());
+        assertFalse(buffer.startRefill());
+        buffer.cancelRefill();
+        assertTrue(buffer.startRefill());
+    }
+}
@@ -0,0 +1,64 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the index of values by name prefix
+ *
+ * @version $Id$
+ */
+public class PrefixIndexTest
+{
+    /**
+     * The longest matching prefix wins
+     */
+    @Test
+    public void testLongestPrefix()
+    {
+        Map<String, String> entries = new HashMap<String, String>();
+        entries.put("com.acme.", "acme");
+        entries.put("com.acme.plugins.", "plugins");
+        entries.put("com.acme.plugins.db.", "db");
+        entries.put("org.", "org");
+        PrefixIndex<String> index = new PrefixIndex<String>(entries);
+
+        assertEquals(4, index.size());
+        assertEquals("acme", index.get("com.acme.Foo"));
+        assertEquals("plugins", index.get("com.acme.plugins.Foo"));
+        assertEquals("db", index.get("com.acme.plugins.db.Foo"));
+        assertEquals("plugins", index.get("com.acme.plugins.web.Foo"));
+        assertEquals("acme", index.get("com.acme.z.Foo"));
+        assertEquals("org", index.get("org.apache.Foo"));
+        assertNull(index.get("com.acmex.Foo"));
+        assertNull(index.get("com.Foo"));
+        assertNull(index.get("a.Foo"));
+        assertNull(index.get("z.Foo"));
+        assertNull(new PrefixIndex<String>(Collections.<String, String>emptyMap()).get("com.acme.Foo"));
+    }
+}
@@ -0,0 +1,110 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.fulcrum.factory.FactoryException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the serialization based context switch strategy
+ *
+ * @version $Id$
+ */
+public class SerializationContextSwitchStrategyTest
+{
+    /** the strategy */
+    private final SerializationContextSwitchStrategy strategy = new SerializationContextSwitchStrategy();
+
+    /** the target class loader */
+    private final ClassLoader loader = getClass().getClassLoader();
+
+    /**
+     * Immutable JDK values are not copied
+     *
+     * @throws Exception generic exception
+     */
+    @Test
+    public void testImmutable() throws Exception
+    {
+        String string = "value";
+        Integer integer = Integer.valueOf(4711);
+        LocalDate date = LocalDate.of(2020, 1, 1);
+
+        assertSame(string, strategy.switchContext(string, loader));
+        assertSame(integer, strategy.switchContext(integer, loader));
+        assertSame(date, strategy.switchContext(date, loader));
+    }
+
+    /**
+     * Other objects are copied, repeatedly through the same buffer
+     *
+     * @throws Exception generic exception
+     */
+    @Test
+    public void testCopy() throws Exception
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            List<Object> list = new ArrayList<Object>(Arrays.<Object>asList("a", Integer.valueOf(i)));
+            Object copy = strategy.switchContext(list, loader);
+            assertNotSame(list, copy);
+            assertEquals(list, copy);
+        }
+    }
+
+    /**
+     * Objects larger than the retained buffer are copied, and smaller ones
+     * after them
+     *
+     * @throws Exception generic exception
+     */
+    @Test
+    public void testLargeCopy() throws Exception
+    {
+        int[] large = new int[64 * 1024];
+        Arrays.fill(large, 7);
+        int[] copy = (int[]) strategy.switchContext(large, loader);
+        assertNotSame(large, copy);
+        assertArrayEquals(large, copy);
+
+        List<Object> list = new ArrayList<Object>(Arrays.<Object>asList("b"));
+        assertEquals(list, strategy.switchContext(list, loader));
+    }
+
+    /**
+     * Objects that cannot be serialized fail
+     */
+    @Test
+    public void testNotSerializable()
+    {
+        assertThrows(FactoryException.class, () -> strategy.switchContext(new Object(), loader));
+    }
+}
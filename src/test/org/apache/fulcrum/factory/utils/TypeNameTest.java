@@ -0,0 +1,77 @@
+package org.apache.fulcrum.factory.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for parsing and resolving type names
+ *
+ * @version $Id$
+ */
+public class TypeNameTest
+{
+    /** resolves through the class loader of the test */
+    private final TypeName.ClassResolver resolver =
+        name -> Class.forName(name, false, TypeNameTest.class.getClassLoader());
+
+    /**
+     * All accepted forms resolve to the expected types
+     *
+     * @throws Exception on errors
+     */
+    @Test
+    public void testResolve() throws Exception
+    {
+        assertSame(int.class, TypeName.parse("int").resolve(resolver));
+        assertSame(String.class, TypeName.parse("java.lang.String").resolve(resolver));
+        assertSame(int[].class, TypeName.parse("int[]").resolve(resolver));
+        assertSame(int[].class, TypeName.parse("[I").resolve(resolver));
+        assertSame(long[][].class, TypeName.parse("[[J").resolve(resolver));
+        assertSame(String[][].class, TypeName.parse("java.lang.String[][]").resolve(resolver));
+        assertSame(String[].class, TypeName.parse("[Ljava.lang.String;").resolve(resolver));
+        assertSame(String.class, TypeName.parse("Ljava/lang/String;").resolve(resolver));
+        assertSame(Object[].class, TypeName.parse("java.lang.Object...").resolve(resolver));
+        assertSame(Map.Entry.class, TypeName.parse("java.util.Map$Entry").resolve(resolver));
+        assertSame(Map.Entry[].class, TypeName.parse("java.util.Map.Entry[]").resolve(resolver));
+    }
+
+    /**
+     * Parsed names are interned, malformed and unknown names are rejected
+     */
+    @Test
+    public void testParse()
+    {
+        assertSame(TypeName.parse("java.lang.String[]"), TypeName.parse("java.lang.String[]"));
+        assertEquals("java.lang.String", TypeName.parse("java.lang.String[]").getElementName());
+        assertEquals(1, TypeName.parse("java.lang.String[]").getDimensions());
+
+        assertThrows(IllegalArgumentException.class, () -> TypeName.parse("[Q"));
+        assertThrows(IllegalArgumentException.class, () -> TypeName.parse("[]"));
+        assertThrows(ClassNotFoundException.class,
+            () -> TypeName.parse("java.util.NoSuch.Nested").resolve(resolver));
+    }
+}